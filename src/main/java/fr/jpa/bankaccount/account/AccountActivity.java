@@ -0,0 +1,78 @@
+package fr.jpa.bankaccount.account;
+
+import java.math.RoundingMode;
+import java.time.Duration;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Recent withdrawals of an account, over the windows of the {@link WithdrawalRules}.
+ * <p>
+ * This class is not thread-safe, it is guarded by the account lock.
+ *
+ * @author jpauchet
+ */
+final class AccountActivity {
+
+    /** Withdrawn amounts over a day, in minor units, by hour. */
+    private final SlidingWindowCounter dailyAmounts;
+
+    /** Withdrawals count over an hour, by minute. */
+    private final SlidingWindowCounter hourlyCounts;
+
+    /**
+     * Constructor.
+     */
+    AccountActivity() {
+        this.dailyAmounts = new SlidingWindowCounter(Duration.ofDays(1), 24);
+        this.hourlyCounts = new SlidingWindowCounter(Duration.ofHours(1), 60);
+    }
+
+    /**
+     * Records a withdrawal.
+     *
+     * @param operation
+     *            the withdrawal
+     */
+    void record(final Operation operation) {
+        final long epochMillis = operation.getOperationDate().toEpochMilli();
+        this.dailyAmounts.add(epochMillis, withdrawnMinorUnits(operation));
+        this.hourlyCounts.add(epochMillis, 1);
+    }
+
+    /**
+     * Gets the amount withdrawn over the day ending at a date.
+     *
+     * @param epochMillis
+     *            the date, in milliseconds since the epoch
+     * @return the withdrawn amount, in minor units
+     */
+    long dailyAmount(final long epochMillis) {
+        return this.dailyAmounts.total(epochMillis);
+    }
+
+    /**
+     * Gets the number of withdrawals over the hour ending at a date.
+     *
+     * @param epochMillis
+     *            the date, in milliseconds since the epoch
+     * @return the number of withdrawals
+     */
+    long hourlyCount(final long epochMillis) {
+        return this.hourlyCounts.total(epochMillis);
+    }
+
+    /**
+     * Gets the amount debited by a withdrawal in minor units, fractions of minor units being rounded up.
+     *
+     * @param operation
+     *            the withdrawal
+     * @return the amount in minor units, {@link Long#MAX_VALUE} if it does not fit in a {@code long}, zero if it is
+     *         negative
+     */
+    static long withdrawnMinorUnits(final Operation operation) {
+        final long minorUnits = Operation.toMinorUnits(operation.getDebit(), RoundingMode.CEILING);
+        return minorUnits == Operation.NOT_IN_MINOR_UNITS ? Long.MAX_VALUE : Math.max(minorUnits, 0L);
+    }
+
+}
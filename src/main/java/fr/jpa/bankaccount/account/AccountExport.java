@@ -0,0 +1,88 @@
+package fr.jpa.bankaccount.account;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Copy of an account, archived operations included, moved from one storage to another.
+ *
+ * @author jpauchet
+ */
+public final class AccountExport implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** Account number. */
+    private final String accountNumber;
+
+    /** Archived operations, from the oldest to the latest. */
+    private final List<Operation> archivedOperations;
+
+    /** Balance of the archived operations. */
+    private final BigDecimal openingBalance;
+
+    /** Operations kept in memory, from the oldest to the latest. */
+    private final List<Operation> operations;
+
+    /**
+     * Constructor.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param archivedOperations
+     *            the archived operations, from the oldest to the latest
+     * @param openingBalance
+     *            the balance of the archived operations
+     * @param operations
+     *            the operations kept in memory, from the oldest to the latest
+     */
+    public AccountExport(final String accountNumber, final List<Operation> archivedOperations, final BigDecimal openingBalance, final List<Operation> operations) {
+        this.accountNumber = accountNumber;
+        this.archivedOperations = Collections.unmodifiableList(new ArrayList<>(archivedOperations));
+        this.openingBalance = openingBalance;
+        this.operations = Collections.unmodifiableList(new ArrayList<>(operations));
+    }
+
+    /**
+     * Gets the account number.
+     *
+     * @return the account number
+     */
+    public String getAccountNumber() {
+        return this.accountNumber;
+    }
+
+    /**
+     * Gets the archived operations.
+     *
+     * @return the archived operations, from the oldest to the latest
+     */
+    public List<Operation> getArchivedOperations() {
+        return this.archivedOperations;
+    }
+
+    /**
+     * Gets the balance of the archived operations.
+     *
+     * @return the opening balance
+     */
+    public BigDecimal getOpeningBalance() {
+        return this.openingBalance;
+    }
+
+    /**
+     * Gets the operations kept in memory.
+     *
+     * @return the operations, from the oldest to the latest
+     */
+    public List<Operation> getOperations() {
+        return this.operations;
+    }
+
+}
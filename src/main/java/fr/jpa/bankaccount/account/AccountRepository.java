@@ -1,30 +1,132 @@
 package fr.jpa.bankaccount.account;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import fr.jpa.bankaccount.bean.BalanceSummary;
 import fr.jpa.bankaccount.bean.Operation;
+import fr.jpa.bankaccount.feed.OperationFeed;
+import fr.jpa.bankaccount.storage.ArchivePolicy;
+import fr.jpa.bankaccount.storage.OperationArchive;
+import fr.jpa.bankaccount.storage.WriteAheadLog;
 
 /**
  * Bank accounts storage.
+ * <p>
+ * Each account is guarded by its own lock. Operations spanning several accounts acquire the locks in the natural order
+ * of the account numbers, so that concurrent multi-account operations never deadlock.
+ * <p>
+ * When an {@link OperationFeed} is given, every created operation is published to it while its account lock is held,
+ * so that the feed follows the order of the operations of each account.
+ * <p>
+ * The dates of the operations are taken before the account lock, so a created operation dated at or before the latest
+ * operation of its account is dated one nanosecond after it instead: the dates of the operations of an account always
+ * follow the order in which they are created.
+ * <p>
+ * When an {@link OperationArchive} is given, the cold operations can be compacted out of memory. The balance of the
+ * archived operations is carried forward as the opening balance of the account, so that the balance stays exact while
+ * only the operations kept in memory are read. Archived operations are loaded on demand by
+ * {@link #list(String, Instant, Instant)}.
+ * <p>
+ * When a {@link WriteAheadLog} is given, it is replayed on construction, and every change is logged and made durable
+ * before being applied, while the account lock is held, so that the log follows the order of the changes of each
+ * account. A compaction logs the size of the archive segment once the operations are archived: on replay, the segments
+ * are cut back to the logged sizes, dropping the operations archived by a compaction that was never logged. A
+ * compaction is followed by a {@link #checkpoint() checkpoint}, which replaces the log by the state of each account,
+ * so that the log does not grow without limit and the archived operations are not replayed. The checkpoint waits for
+ * the changes being logged and holds back the next ones, the changes of the different accounts holding a shared lock
+ * while they are logged and applied. The idempotency keys and the recent withdrawals of the archived operations are
+ * not kept by a checkpoint.
+ * <p>
+ * The idempotency keys of the operations are remembered next to their account, for
+ * {@link #createOnce(Operation, WithdrawalRules)}, so that they are rebuilt with the account when the
+ * {@link WriteAheadLog} is replayed or when the account is restored.
+ * <p>
+ * The balance of each account is maintained as the operations are created, and checked against the operations by the
+ * {@link BalanceAuditor}.
+ * <p>
+ * The net amounts of an account are kept in minor units in an {@link AmountColumn} once it has been summarized, so
+ * that {@link #summarize(String)} runs the {@link AmountKernel} without reading the operations again.
  *
  * @author jpauchet
  */
 public class AccountRepository {
 
+    /** Maximum number of idempotency keys remembered per account. */
+    public static final int DEDUPLICATION_CAPACITY = 1024;
+
+    /** Retention of the idempotency keys. */
+    public static final Duration DEDUPLICATION_RETENTION = Duration.ofHours(24);
+
     /** Bank accounts and their operations. */
     private final Map<String, List<Operation>> accounts;
 
+    /** Bank accounts locks. */
+    private final Map<String, Lock> locks;
+
+    /** Change-feed of the created operations. */
+    private final OperationFeed operationFeed;
+
+    /** Archive of the cold operations. */
+    private final OperationArchive operationArchive;
+
+    /** Write-ahead log of the changes. */
+    private final WriteAheadLog writeAheadLog;
+
+    /** Balances of the archived operations, by account number. */
+    private final Map<String, BigDecimal> openingBalances;
+
+    /** Dates of the latest archived operations, by account number. */
+    private final Map<String, Instant> archivedUntil;
+
+    /** Numbers of archived operations, by account number. */
+    private final Map<String, Integer> archivedCounts;
+
+    /** Balances, by account number. */
+    private final Map<String, BigDecimal> balances;
+
+    /** Versions, incremented by every change of the account, by account number. */
+    private final Map<String, Long> versions;
+
+    /** Recent withdrawals, by account number. */
+    private final Map<String, AccountActivity> activities;
+
+    /**
+     * Idempotency keys of the operations, along with whether the balance was positive after them, by account number.
+     */
+    private final Map<String, DeduplicationWindow<Boolean>> deduplicationWindows;
+
+    /** Net amounts in minor units of the summarized accounts, by account number. */
+    private final Map<String, AmountColumn> columns;
+
+    /** Dates of the latest operations, by account number. */
+    private final Map<String, Instant> latestDates;
+
+    /** Lock shared by the logged changes and held exclusively by the checkpoints, or {@code null} without log. */
+    private final ReadWriteLock checkpointLock;
+
     /**
      * Constructor.
      */
     public AccountRepository() {
-        this.accounts = new HashMap<>();
+        this(new ConcurrentHashMap<>(), null);
     }
 
     /**
@@ -34,28 +136,301 @@ public class AccountRepository {
      *            the accounts
      */
     public AccountRepository(final Map<String, List<Operation>> accounts) {
-        this.accounts = accounts;
+        this(accounts, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param operationFeed
+     *            the change-feed of the created operations
+     */
+    public AccountRepository(final OperationFeed operationFeed) {
+        this(new ConcurrentHashMap<>(), operationFeed);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param accounts
+     *            the accounts
+     * @param operationFeed
+     *            the change-feed of the created operations, or {@code null}
+     */
+    public AccountRepository(final Map<String, List<Operation>> accounts, final OperationFeed operationFeed) {
+        this(accounts, operationFeed, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param operationFeed
+     *            the change-feed of the created operations, or {@code null}
+     * @param operationArchive
+     *            the archive of the cold operations
+     */
+    public AccountRepository(final OperationFeed operationFeed, final OperationArchive operationArchive) {
+        this(new ConcurrentHashMap<>(), operationFeed, operationArchive);
     }
 
     /**
-     * Lists operations on the account.
+     * Constructor.
+     *
+     * @param accounts
+     *            the accounts
+     * @param operationFeed
+     *            the change-feed of the created operations, or {@code null}
+     * @param operationArchive
+     *            the archive of the cold operations, or {@code null}
+     */
+    public AccountRepository(final Map<String, List<Operation>> accounts, final OperationFeed operationFeed, final OperationArchive operationArchive) {
+        this(accounts, operationFeed, operationArchive, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param operationFeed
+     *            the change-feed of the created operations, or {@code null}
+     * @param operationArchive
+     *            the archive of the cold operations, or {@code null}
+     * @param writeAheadLog
+     *            the write-ahead log of the changes
+     */
+    public AccountRepository(final OperationFeed operationFeed, final OperationArchive operationArchive, final WriteAheadLog writeAheadLog) {
+        this(new ConcurrentHashMap<>(), operationFeed, operationArchive, writeAheadLog);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param accounts
+     *            the accounts
+     * @param operationFeed
+     *            the change-feed of the created operations, or {@code null}
+     * @param operationArchive
+     *            the archive of the cold operations, or {@code null}
+     * @param writeAheadLog
+     *            the write-ahead log of the changes, replayed on construction, or {@code null}
+     */
+    public AccountRepository(final Map<String, List<Operation>> accounts, final OperationFeed operationFeed, final OperationArchive operationArchive,
+            final WriteAheadLog writeAheadLog) {
+        this.accounts = new ConcurrentHashMap<>(accounts);
+        this.locks = new ConcurrentHashMap<>();
+        this.operationFeed = operationFeed;
+        this.operationArchive = operationArchive;
+        this.writeAheadLog = writeAheadLog;
+        this.openingBalances = new ConcurrentHashMap<>();
+        this.archivedUntil = new ConcurrentHashMap<>();
+        this.archivedCounts = new ConcurrentHashMap<>();
+        this.balances = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.activities = new ConcurrentHashMap<>();
+        this.deduplicationWindows = new ConcurrentHashMap<>();
+        this.columns = new ConcurrentHashMap<>();
+        this.latestDates = new ConcurrentHashMap<>();
+        this.checkpointLock = writeAheadLog == null ? null : new ReentrantReadWriteLock();
+        for (final Map.Entry<String, List<Operation>> account : this.accounts.entrySet()) {
+            BigDecimal balance = BigDecimal.ZERO;
+            for (final Operation operation : account.getValue()) {
+                balance = balance.add(net(operation));
+                this.recordActivity(operation);
+                this.recordIdempotencyKey(operation, balance);
+                this.recordDate(operation);
+            }
+            this.balances.put(account.getKey(), balance);
+        }
+        if (writeAheadLog != null) {
+            final Map<String, Long> segmentSizes = new HashMap<>();
+            writeAheadLog.replay(new WriteAheadLog.Replayer() {
+
+                @Override
+                public void replayOperations(final List<Operation> operations) {
+                    for (final Operation operation : operations) {
+                        AccountRepository.this.store(operation);
+                        segmentSizes.putIfAbsent(operation.getAccountNumber(), 0L);
+                    }
+                }
+
+                @Override
+                public void replayCompaction(final String accountNumber, final int count, final long segmentSize) {
+                    final List<Operation> chronological = new ArrayList<>(AccountRepository.this.accounts.get(accountNumber));
+                    chronological.sort(Comparator.comparing(Operation::getOperationDate));
+                    AccountRepository.this.evict(accountNumber, chronological, count);
+                    segmentSizes.put(accountNumber, segmentSize);
+                }
+
+                @Override
+                public void replayRemoval(final String accountNumber) {
+                    AccountRepository.this.discard(accountNumber);
+                    segmentSizes.put(accountNumber, 0L);
+                }
+
+                @Override
+                public void replayCheckpoint(final String accountNumber, final List<Operation> operations, final int archivedCount,
+                        final BigDecimal openingBalance, final Instant archivedUntil, final long segmentSize) {
+                    AccountRepository.this.discard(accountNumber);
+                    AccountRepository.this.accounts.put(accountNumber, new ArrayList<>());
+                    AccountRepository.this.balances.put(accountNumber, openingBalance);
+                    if (archivedCount > 0) {
+                        AccountRepository.this.openingBalances.put(accountNumber, openingBalance);
+                        AccountRepository.this.archivedUntil.put(accountNumber, archivedUntil);
+                        AccountRepository.this.archivedCounts.put(accountNumber, archivedCount);
+                        AccountRepository.this.latestDates.put(accountNumber, archivedUntil);
+                    }
+                    for (final Operation operation : operations) {
+                        AccountRepository.this.store(operation);
+                    }
+                    segmentSizes.put(accountNumber, segmentSize);
+                }
+
+            });
+            if (operationArchive != null) {
+                // drops the blocks archived by a compaction that crashed before being logged
+                for (final Map.Entry<String, Long> segmentSize : segmentSizes.entrySet()) {
+                    operationArchive.truncate(segmentSize.getKey(), segmentSize.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists operations on the account, excluding the archived ones.
      *
      * @param accountNumber
      *            the account number
      * @return the list of operations performed on the account
      */
     public List<Operation> list(final String accountNumber) {
-        List<Operation> operations = null;
+        final List<Operation> operations = new ArrayList<>();
         if (accountNumber != null) {
-            operations = this.accounts.get(accountNumber);
+            final Lock lock = this.lock(accountNumber);
+            lock.lock();
+            try {
+                final List<Operation> stored = this.accounts.get(accountNumber);
+                if (stored != null) {
+                    operations.addAll(stored);
+                }
+            } finally {
+                lock.unlock();
+            }
         }
-        if (operations == null) {
-            operations = new ArrayList<>();
+        operations.sort(Comparator.comparing(Operation::getOperationDate).reversed());
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Lists operations on the account within a period, loading the archived ones if the period requires it.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param from
+     *            the start of the period, inclusive, or {@code null}
+     * @param to
+     *            the end of the period, exclusive, or {@code null}
+     * @return the list of operations performed on the account within the period
+     */
+    public List<Operation> list(final String accountNumber, final Instant from, final Instant to) {
+        final List<Operation> operations = new ArrayList<>();
+        if (accountNumber != null) {
+            final Lock lock = this.lock(accountNumber);
+            lock.lock();
+            try {
+                final Instant archived = this.archivedUntil.get(accountNumber);
+                if (archived != null && (from == null || !archived.isBefore(from))) {
+                    operations.addAll(this.operationArchive.load(accountNumber, from, to));
+                }
+                final List<Operation> stored = this.accounts.get(accountNumber);
+                if (stored != null) {
+                    for (final Operation operation : stored) {
+                        final Instant date = operation.getOperationDate();
+                        if ((from == null || !date.isBefore(from)) && (to == null || date.isBefore(to))) {
+                            operations.add(operation);
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
         }
         operations.sort(Comparator.comparing(Operation::getOperationDate).reversed());
         return Collections.unmodifiableList(operations);
     }
 
+    /**
+     * Moves the cold operations of the account to the archive, then writes a checkpoint.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param policy
+     *            the policy selecting the cold operations
+     * @param now
+     *            the current date
+     * @return the number of archived operations
+     */
+    public int compact(final String accountNumber, final ArchivePolicy policy, final Instant now) {
+        final int archived = this.archiveColdOperations(accountNumber, policy, now);
+        if (archived > 0) {
+            this.checkpoint();
+        }
+        return archived;
+    }
+
+    /**
+     * Moves the cold operations of all the accounts to the archive, then writes a checkpoint.
+     *
+     * @param policy
+     *            the policy selecting the cold operations
+     * @param now
+     *            the current date
+     * @return the number of archived operations
+     */
+    public int compactAll(final ArchivePolicy policy, final Instant now) {
+        int archived = 0;
+        for (final String accountNumber : this.accounts.keySet()) {
+            archived += this.archiveColdOperations(accountNumber, policy, now);
+        }
+        if (archived > 0) {
+            this.checkpoint();
+        }
+        return archived;
+    }
+
+    /**
+     * Replaces the write-ahead log, if any, by the state of each account: its operations kept in memory, and the
+     * number, the balance and the archive segment size of its archived operations.
+     */
+    public void checkpoint() {
+        if (this.writeAheadLog == null) {
+            return;
+        }
+        final Lock lock = this.checkpointLock.writeLock();
+        lock.lock();
+        try {
+            await(this.writeAheadLog.checkpoint(checkpoint -> {
+                for (final Map.Entry<String, List<Operation>> account : this.accounts.entrySet()) {
+                    final String accountNumber = account.getKey();
+                    final int archivedCount = this.archivedCounts.getOrDefault(accountNumber, 0);
+                    checkpoint.account(accountNumber, account.getValue(), archivedCount, this.getOpeningBalance(accountNumber),
+                            this.archivedUntil.get(accountNumber), archivedCount == 0 ? 0L : this.operationArchive.size(accountNumber));
+                }
+            }));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the balance of the archived operations of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the opening balance
+     */
+    public BigDecimal getOpeningBalance(final String accountNumber) {
+        return this.openingBalances.getOrDefault(accountNumber, BigDecimal.ZERO);
+    }
+
     /**
      * Creates an operation related to the bank account.
      *
@@ -63,15 +438,152 @@ public class AccountRepository {
      *            the operation
      */
     public void create(final Operation operation) {
+        this.create(operation, null);
+    }
+
+    /**
+     * Creates an operation related to the bank account, once checked against the withdrawal rules.
+     *
+     * @param operation
+     *            the operation
+     * @param withdrawalRules
+     *            the withdrawal rules, or {@code null}
+     * @throws WithdrawalRejectedException
+     *             if the operation is a withdrawal breaking a rule
+     */
+    public void create(final Operation operation, final WithdrawalRules withdrawalRules) {
         if (operation == null || operation.getAccountNumber() == null) {
             return;
         }
-        List<Operation> operations = this.accounts.get(operation.getAccountNumber());
-        if (operations == null) {
-            operations = new ArrayList<>();
-            this.accounts.put(operation.getAccountNumber(), operations);
+        final Lock lock = this.lock(operation.getAccountNumber());
+        lock.lock();
+        try {
+            final Operation dated = dateAfter(operation, this.latestDates.get(operation.getAccountNumber()));
+            this.check(dated, withdrawalRules);
+            this.beginChange();
+            try {
+                if (this.writeAheadLog != null) {
+                    await(this.writeAheadLog.appendOperations(Collections.singletonList(dated)));
+                }
+                this.append(dated);
+            } finally {
+                this.endChange();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates an operation related to the bank account, unless an operation with the same idempotency key was already
+     * created on the account within {@link #DEDUPLICATION_RETENTION}, the operation date being the current date.
+     *
+     * @param operation
+     *            the operation, with an idempotency key
+     * @param withdrawalRules
+     *            the withdrawal rules, or {@code null}
+     * @return a booleen that tells if the balance was positive or not after the operation, or after the original
+     *         operation if it was already created
+     * @throws WithdrawalRejectedException
+     *             if the operation is a withdrawal breaking a rule
+     */
+    public boolean createOnce(final Operation operation, final WithdrawalRules withdrawalRules) {
+        if (operation == null || operation.getAccountNumber() == null || operation.getIdempotencyKey() == null || operation.getOperationDate() == null) {
+            throw new IllegalArgumentException("The operation should be related to an account and have an idempotency key and a date");
+        }
+        final String accountNumber = operation.getAccountNumber();
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            final Operation dated = dateAfter(operation, this.latestDates.get(accountNumber));
+            final DeduplicationWindow<Boolean> window = this.deduplicationWindows.get(accountNumber);
+            final Boolean positive = window == null ? null : window.get(dated.getIdempotencyKey(), dated.getOperationDate());
+            if (positive != null) {
+                return positive;
+            }
+            this.check(dated, withdrawalRules);
+            this.beginChange();
+            try {
+                if (this.writeAheadLog != null) {
+                    await(this.writeAheadLog.appendOperations(Collections.singletonList(dated)));
+                }
+                this.append(dated);
+            } finally {
+                this.endChange();
+            }
+            return this.calculateBalance(accountNumber).compareTo(BigDecimal.ZERO) >= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates several operations atomically, possibly related to different bank accounts. Either all the operations
+     * are visible or none of them is.
+     *
+     * @param operations
+     *            the operations
+     */
+    public void createAll(final List<Operation> operations) {
+        this.createAll(operations, null);
+    }
+
+    /**
+     * Creates several operations atomically, possibly related to different bank accounts, once checked against the
+     * withdrawal rules. Either all the operations are visible or none of them is.
+     *
+     * @param operations
+     *            the operations
+     * @param withdrawalRules
+     *            the withdrawal rules, or {@code null}
+     * @throws WithdrawalRejectedException
+     *             if one of the operations is a withdrawal breaking a rule
+     */
+    public void createAll(final List<Operation> operations, final WithdrawalRules withdrawalRules) {
+        if (operations == null || operations.isEmpty()) {
+            return;
+        }
+        final TreeSet<String> accountNumbers = new TreeSet<>();
+        for (final Operation operation : operations) {
+            if (operation == null || operation.getAccountNumber() == null) {
+                throw new IllegalArgumentException("The operations should all be related to an account");
+            }
+            accountNumbers.add(operation.getAccountNumber());
+        }
+        final List<Lock> acquired = new ArrayList<>(accountNumbers.size());
+        try {
+            for (final String accountNumber : accountNumbers) {
+                final Lock lock = this.lock(accountNumber);
+                lock.lock();
+                acquired.add(lock);
+            }
+            final Map<String, Instant> latestDates = new HashMap<>();
+            final List<Operation> dated = new ArrayList<>(operations.size());
+            for (final Operation operation : operations) {
+                final String accountNumber = operation.getAccountNumber();
+                final Operation after = dateAfter(operation, latestDates.containsKey(accountNumber) ? latestDates.get(accountNumber) : this.latestDates.get(accountNumber));
+                latestDates.put(accountNumber, after.getOperationDate());
+                dated.add(after);
+            }
+            for (final Operation operation : dated) {
+                this.check(operation, withdrawalRules);
+            }
+            this.beginChange();
+            try {
+                if (this.writeAheadLog != null) {
+                    await(this.writeAheadLog.appendOperations(dated));
+                }
+                for (final Operation operation : dated) {
+                    this.append(operation);
+                }
+            } finally {
+                this.endChange();
+            }
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).unlock();
+            }
         }
-        operations.add(operation);
     }
 
     /**
@@ -82,12 +594,621 @@ public class AccountRepository {
      * @return the account balance
      */
     public BigDecimal calculateBalance(final String accountNumber) {
-        BigDecimal balance = BigDecimal.ZERO;
-        for (final Operation operation : this.list(accountNumber)) {
-            balance = balance.add(operation.getCredit());
-            balance = balance.subtract(operation.getDebit());
+        if (accountNumber == null) {
+            return BigDecimal.ZERO;
         }
-        return balance;
+        return this.balances.getOrDefault(accountNumber, BigDecimal.ZERO);
+    }
+
+    /**
+     * Gets the version of the account, incremented by every change of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the version of the account
+     */
+    public long getVersion(final String accountNumber) {
+        return this.versions.getOrDefault(accountNumber, 0L);
+    }
+
+    /**
+     * Gets the numbers of the accounts.
+     *
+     * @return the account numbers
+     */
+    public Set<String> getAccountNumbers() {
+        return Collections.unmodifiableSet(this.accounts.keySet());
+    }
+
+    /**
+     * Copies an account, archived operations included, so that it can be restored in another storage with
+     * {@link #restore(AccountExport)} before it is {@link #remove(String) removed} from this one.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the copy of the account
+     * @throws IllegalStateException
+     *             if the archive does not hold all the archived operations of the account
+     */
+    public AccountExport export(final String accountNumber) {
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            final int archivedCount = this.archivedCounts.getOrDefault(accountNumber, 0);
+            final List<Operation> archived = archivedCount == 0 ? Collections.emptyList()
+                    : this.operationArchive.load(accountNumber, null, null, this.operationArchive.size(accountNumber));
+            if (archived.size() != archivedCount) {
+                throw new IllegalStateException("The archive of the account " + accountNumber + " holds " + archived.size() + " operations instead of " + archivedCount);
+            }
+            return new AccountExport(accountNumber, archived, this.getOpeningBalance(accountNumber), this.chronological(accountNumber));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an account, along with its archive segment, so that it can be moved to another storage with
+     * {@link #restore(List)} or {@link #restore(AccountExport)}.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the operations of the account kept in memory, from the oldest to the latest
+     */
+    public List<Operation> remove(final String accountNumber) {
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            final List<Operation> stored = this.accounts.get(accountNumber);
+            if (stored == null) {
+                return Collections.emptyList();
+            }
+            this.beginChange();
+            try {
+                if (this.writeAheadLog != null) {
+                    await(this.writeAheadLog.appendRemoval(accountNumber));
+                }
+                if (this.archivedCounts.containsKey(accountNumber)) {
+                    this.operationArchive.delete(accountNumber);
+                }
+                this.discard(accountNumber);
+            } finally {
+                this.endChange();
+            }
+            final List<Operation> chronological = new ArrayList<>(stored);
+            chronological.sort(Comparator.comparing(Operation::getOperationDate));
+            return chronological;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restores operations removed from another storage, without publishing them again.
+     *
+     * @param operations
+     *            the operations, from the oldest to the latest
+     */
+    public void restore(final List<Operation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            return;
+        }
+        final TreeSet<String> accountNumbers = new TreeSet<>();
+        for (final Operation operation : operations) {
+            if (operation == null || operation.getAccountNumber() == null) {
+                throw new IllegalArgumentException("The operations should all be related to an account");
+            }
+            accountNumbers.add(operation.getAccountNumber());
+        }
+        final List<Lock> acquired = new ArrayList<>(accountNumbers.size());
+        try {
+            for (final String accountNumber : accountNumbers) {
+                final Lock lock = this.lock(accountNumber);
+                lock.lock();
+                acquired.add(lock);
+            }
+            this.beginChange();
+            try {
+                if (this.writeAheadLog != null) {
+                    await(this.writeAheadLog.appendOperations(operations));
+                }
+                for (final Operation operation : operations) {
+                    this.store(operation);
+                }
+            } finally {
+                this.endChange();
+            }
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Restores an account exported from another storage, without publishing its operations again. The archived
+     * operations are restored then archived again, so that they count through the opening balance like in the other
+     * storage.
+     *
+     * @param export
+     *            the copy of the account
+     * @throws IllegalStateException
+     *             if the account has archived operations and no archive is configured, if its archived operations do
+     *             not add up to its opening balance, or if the account already exists
+     */
+    public void restore(final AccountExport export) {
+        if (export == null || export.getAccountNumber() == null) {
+            throw new IllegalArgumentException("The account should be specified");
+        }
+        final String accountNumber = export.getAccountNumber();
+        final List<Operation> archived = export.getArchivedOperations();
+        final List<Operation> chronological = new ArrayList<>(archived);
+        chronological.addAll(export.getOperations());
+        BigDecimal openingBalance = BigDecimal.ZERO;
+        for (final Operation operation : chronological) {
+            if (!accountNumber.equals(operation.getAccountNumber())) {
+                throw new IllegalArgumentException("The operations should all be related to the account " + accountNumber);
+            }
+        }
+        for (final Operation operation : archived) {
+            openingBalance = openingBalance.add(net(operation));
+        }
+        if (!archived.isEmpty() && this.operationArchive == null) {
+            throw new IllegalStateException("No archive is configured for the archived operations of the account " + accountNumber);
+        }
+        if (export.getOpeningBalance() == null || openingBalance.compareTo(export.getOpeningBalance()) != 0) {
+            throw new IllegalStateException("The archived operations of the account " + accountNumber + " do not add up to its opening balance");
+        }
+        if (chronological.isEmpty()) {
+            return;
+        }
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            if (this.accounts.containsKey(accountNumber)) {
+                throw new IllegalStateException("The account " + accountNumber + " already exists");
+            }
+            this.beginChange();
+            try {
+                if (this.writeAheadLog != null) {
+                    await(this.writeAheadLog.appendOperations(chronological));
+                }
+                for (final Operation operation : chronological) {
+                    this.store(operation);
+                }
+                if (!archived.isEmpty()) {
+                    this.archive(accountNumber, chronological, archived.size());
+                }
+            } finally {
+                this.endChange();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Summarizes the operations of the account kept in memory: balance, net amount by operation type, and lowest and
+     * highest balances reached from the opening balance.
+     * <p>
+     * The amounts are summed in minor units by the {@link AmountKernel}, unless one of them has more decimals than
+     * {@link Operation#MINOR_UNITS_SCALE} or the sums could overflow, in which case they are summed as
+     * {@link BigDecimal}. Either way, the amounts of the summary have at least {@link Operation#MINOR_UNITS_SCALE}
+     * decimals, so that a summary does not depend on the way it was computed; they should be compared with the
+     * balances of the other methods, which keep the scale of the operations, with {@link BigDecimal#compareTo}.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the summary
+     */
+    public BalanceSummary summarize(final String accountNumber) {
+        if (accountNumber == null) {
+            throw new IllegalArgumentException("The account number should be specified");
+        }
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            final BigDecimal openingBalance = this.getOpeningBalance(accountNumber);
+            AmountColumn column = this.columns.get(accountNumber);
+            List<Operation> chronological = null;
+            if (column == null) {
+                chronological = this.chronological(accountNumber);
+                column = new AmountColumn();
+                for (final Operation operation : chronological) {
+                    column.append(operation);
+                }
+                this.columns.put(accountNumber, column);
+            }
+            final long openingMinorUnits = Operation.toMinorUnits(openingBalance);
+            if (column.isComputable(openingMinorUnits)) {
+                final OperationType[] operationTypes = OperationType.values();
+                final long[] sums = AmountKernel.sumByType(column.amounts(), column.types(), column.size(), operationTypes.length);
+                final Map<OperationType, BigDecimal> totals = new EnumMap<>(OperationType.class);
+                for (final OperationType operationType : operationTypes) {
+                    totals.put(operationType, BigDecimal.valueOf(sums[operationType.ordinal()], Operation.MINOR_UNITS_SCALE));
+                }
+                final long balance = openingMinorUnits + AmountKernel.sum(column.amounts(), column.size());
+                final long[] range = AmountKernel.runningRange(openingMinorUnits, column.amounts(), column.size());
+                return new BalanceSummary(accountNumber, column.size(), BigDecimal.valueOf(balance, Operation.MINOR_UNITS_SCALE), totals,
+                        BigDecimal.valueOf(range[0], Operation.MINOR_UNITS_SCALE), BigDecimal.valueOf(range[1], Operation.MINOR_UNITS_SCALE));
+            }
+            return summarizeExactly(accountNumber, openingBalance, chronological == null ? this.chronological(accountNumber) : chronological);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a consistent snapshot of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the snapshot
+     */
+    AccountSnapshot snapshot(final String accountNumber) {
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            final List<Operation> stored = this.accounts.get(accountNumber);
+            final int archivedCount = this.archivedCounts.getOrDefault(accountNumber, 0);
+            return new AccountSnapshot(accountNumber, //
+                    stored == null ? new Operation[0] : stored.toArray(new Operation[stored.size()]), //
+                    this.getOpeningBalance(accountNumber), //
+                    archivedCount, //
+                    archivedCount == 0 ? 0L : this.operationArchive.size(accountNumber), //
+                    this.calculateBalance(accountNumber), //
+                    this.getVersion(accountNumber));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the archive of the cold operations.
+     *
+     * @return the archive, or {@code null}
+     */
+    OperationArchive getOperationArchive() {
+        return this.operationArchive;
+    }
+
+    /**
+     * Appends an operation to its account and publishes it. The account lock must be held by the caller.
+     *
+     * @param operation
+     *            the operation
+     */
+    private void append(final Operation operation) {
+        this.store(operation);
+        if (this.operationFeed != null) {
+            this.operationFeed.publish(operation);
+        }
+    }
+
+    /**
+     * Adds an operation to its account. The account lock must be held by the caller.
+     *
+     * @param operation
+     *            the operation
+     */
+    private void store(final Operation operation) {
+        final String accountNumber = operation.getAccountNumber();
+        this.accounts.computeIfAbsent(accountNumber, key -> new ArrayList<>()).add(operation);
+        final BigDecimal balance = this.calculateBalance(accountNumber).add(net(operation));
+        this.balances.put(accountNumber, balance);
+        this.versions.merge(accountNumber, 1L, Long::sum);
+        this.recordActivity(operation);
+        this.recordIdempotencyKey(operation, balance);
+        this.recordDate(operation);
+        final AmountColumn column = this.columns.get(accountNumber);
+        if (column != null && !column.append(operation)) {
+            this.columns.remove(accountNumber);
+        }
+    }
+
+    /**
+     * Lists the operations of an account kept in memory, from the oldest to the latest. The account lock must be held
+     * by the caller.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the operations
+     */
+    private List<Operation> chronological(final String accountNumber) {
+        final List<Operation> stored = this.accounts.get(accountNumber);
+        final List<Operation> chronological = stored == null ? new ArrayList<>() : new ArrayList<>(stored);
+        chronological.sort(Comparator.comparing(Operation::getOperationDate));
+        return chronological;
+    }
+
+    /**
+     * Records an operation in the recent withdrawals of its account. The account lock must be held by the caller.
+     *
+     * @param operation
+     *            the operation
+     */
+    private void recordActivity(final Operation operation) {
+        if (operation.getOperationType() == OperationType.WITHDRAWAL && operation.getOperationDate() != null) {
+            this.activities.computeIfAbsent(operation.getAccountNumber(), key -> new AccountActivity()).record(operation);
+        }
+    }
+
+    /**
+     * Records the date of an operation as the latest date of its account, if it is. The account lock must be held by
+     * the caller.
+     *
+     * @param operation
+     *            the operation
+     */
+    private void recordDate(final Operation operation) {
+        if (operation.getOperationDate() != null) {
+            this.latestDates.merge(operation.getAccountNumber(), operation.getOperationDate(), (latest, date) -> date.isAfter(latest) ? date : latest);
+        }
+    }
+
+    /**
+     * Records the idempotency key of an operation, if any, in the deduplication window of its account. The account
+     * lock must be held by the caller.
+     *
+     * @param operation
+     *            the operation
+     * @param balance
+     *            the balance of the account after the operation
+     */
+    private void recordIdempotencyKey(final Operation operation, final BigDecimal balance) {
+        if (operation.getIdempotencyKey() != null && operation.getOperationDate() != null) {
+            this.deduplicationWindows.computeIfAbsent(operation.getAccountNumber(), key -> new DeduplicationWindow<>(DEDUPLICATION_CAPACITY, DEDUPLICATION_RETENTION))
+                    .put(operation.getIdempotencyKey(), balance.compareTo(BigDecimal.ZERO) >= 0, operation.getOperationDate());
+        }
+    }
+
+    /**
+     * Checks an operation against the withdrawal rules. The account lock must be held by the caller.
+     *
+     * @param operation
+     *            the operation
+     * @param withdrawalRules
+     *            the withdrawal rules, or {@code null}
+     * @throws WithdrawalRejectedException
+     *             if the operation is a withdrawal breaking a rule
+     */
+    private void check(final Operation operation, final WithdrawalRules withdrawalRules) {
+        if (withdrawalRules != null && operation.getOperationType() == OperationType.WITHDRAWAL) {
+            final String accountNumber = operation.getAccountNumber();
+            withdrawalRules.check(operation, this.calculateBalance(accountNumber), this.activities.get(accountNumber));
+        }
+    }
+
+    /**
+     * Removes the oldest operations of an account once archived, and carries their balance forward. The account lock
+     * must be held by the caller.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param chronological
+     *            the operations of the account, from the oldest to the latest
+     * @param count
+     *            the number of archived operations
+     */
+    private void evict(final String accountNumber, final List<Operation> chronological, final int count) {
+        BigDecimal openingBalance = this.getOpeningBalance(accountNumber);
+        for (final Operation operation : chronological.subList(0, count)) {
+            openingBalance = openingBalance.add(net(operation));
+        }
+        this.openingBalances.put(accountNumber, openingBalance);
+        this.archivedUntil.put(accountNumber, chronological.get(count - 1).getOperationDate());
+        this.archivedCounts.merge(accountNumber, count, Integer::sum);
+        this.accounts.put(accountNumber, new ArrayList<>(chronological.subList(count, chronological.size())));
+        this.columns.remove(accountNumber);
+        this.versions.merge(accountNumber, 1L, Long::sum);
+    }
+
+    /**
+     * Moves the cold operations of the account to the archive, without writing a checkpoint.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param policy
+     *            the policy selecting the cold operations
+     * @param now
+     *            the current date
+     * @return the number of archived operations
+     */
+    private int archiveColdOperations(final String accountNumber, final ArchivePolicy policy, final Instant now) {
+        if (this.operationArchive == null) {
+            throw new IllegalStateException("No archive is configured");
+        }
+        final Lock lock = this.lock(accountNumber);
+        lock.lock();
+        try {
+            final List<Operation> stored = this.accounts.get(accountNumber);
+            if (stored == null || stored.isEmpty()) {
+                return 0;
+            }
+            final List<Operation> chronological = new ArrayList<>(stored);
+            chronological.sort(Comparator.comparing(Operation::getOperationDate));
+            final int cold = policy.countColdOperations(chronological, now);
+            if (cold <= 0) {
+                return 0;
+            }
+            this.beginChange();
+            try {
+                this.archive(accountNumber, chronological, cold);
+            } finally {
+                this.endChange();
+            }
+            return cold;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the oldest operations of an account to the archive, logs the compaction, then evicts them from memory. The
+     * account lock must be held by the caller.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param chronological
+     *            the operations of the account kept in memory, from the oldest to the latest
+     * @param count
+     *            the number of operations to archive
+     */
+    private void archive(final String accountNumber, final List<Operation> chronological, final int count) {
+        final long segmentSize = this.operationArchive.size(accountNumber);
+        final long archivedSize = this.operationArchive.append(accountNumber, chronological.subList(0, count));
+        if (this.writeAheadLog != null) {
+            try {
+                await(this.writeAheadLog.appendCompaction(accountNumber, count, archivedSize));
+            } catch (final RuntimeException e) {
+                this.operationArchive.truncate(accountNumber, segmentSize);
+                throw e;
+            }
+        }
+        this.evict(accountNumber, chronological, count);
+    }
+
+    /**
+     * Starts a change, so that no checkpoint is written until it is logged and applied.
+     */
+    private void beginChange() {
+        if (this.checkpointLock != null) {
+            this.checkpointLock.readLock().lock();
+        }
+    }
+
+    /**
+     * Ends a change started by {@link #beginChange()}.
+     */
+    private void endChange() {
+        if (this.checkpointLock != null) {
+            this.checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets an account, along with its archived operations. The account lock must be held by the caller.
+     *
+     * @param accountNumber
+     *            the account number
+     */
+    private void discard(final String accountNumber) {
+        this.accounts.remove(accountNumber);
+        this.balances.remove(accountNumber);
+        this.activities.remove(accountNumber);
+        this.deduplicationWindows.remove(accountNumber);
+        this.columns.remove(accountNumber);
+        this.latestDates.remove(accountNumber);
+        this.openingBalances.remove(accountNumber);
+        this.archivedUntil.remove(accountNumber);
+        this.archivedCounts.remove(accountNumber);
+        this.versions.merge(accountNumber, 1L, Long::sum);
+    }
+
+    /**
+     * Dates an operation strictly after the latest operation of its account, so that the operations of an account
+     * follow the order in which they are created even when their dates were taken before the account lock.
+     *
+     * @param operation
+     *            the operation
+     * @param latest
+     *            the date of the latest operation of the account, or {@code null}
+     * @return the operation, or a copy of it dated one nanosecond after the latest operation
+     */
+    private static Operation dateAfter(final Operation operation, final Instant latest) {
+        if (latest == null || operation.getOperationDate() == null || operation.getOperationDate().isAfter(latest)) {
+            return operation;
+        }
+        return new Operation(operation.getAccountNumber(), operation.getOperationType(), latest.plusNanos(1), operation.getDebit(), operation.getCredit(),
+                operation.getIdempotencyKey());
+    }
+
+    /**
+     * Waits for a change to be durable.
+     *
+     * @param durable
+     *            the future completed once the change is durable
+     */
+    private static void await(final CompletableFuture<Void> durable) {
+        try {
+            durable.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Summarizes operations with {@link BigDecimal} arithmetic, the amounts having at least
+     * {@link Operation#MINOR_UNITS_SCALE} decimals like those summed by the {@link AmountKernel}.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param openingBalance
+     *            the opening balance
+     * @param chronological
+     *            the operations, from the oldest to the latest
+     * @return the summary
+     */
+    static BalanceSummary summarizeExactly(final String accountNumber, final BigDecimal openingBalance, final List<Operation> chronological) {
+        final Map<OperationType, BigDecimal> totals = new EnumMap<>(OperationType.class);
+        for (final OperationType operationType : OperationType.values()) {
+            totals.put(operationType, BigDecimal.ZERO);
+        }
+        BigDecimal balance = openingBalance;
+        BigDecimal minBalance = openingBalance;
+        BigDecimal maxBalance = openingBalance;
+        for (final Operation operation : chronological) {
+            final BigDecimal net = net(operation);
+            if (operation.getOperationType() != null) {
+                totals.merge(operation.getOperationType(), net, BigDecimal::add);
+            }
+            balance = balance.add(net);
+            minBalance = minBalance.min(balance);
+            maxBalance = maxBalance.max(balance);
+        }
+        totals.replaceAll((operationType, total) -> toMinorUnitsScale(total));
+        return new BalanceSummary(accountNumber, chronological.size(), toMinorUnitsScale(balance), totals, toMinorUnitsScale(minBalance),
+                toMinorUnitsScale(maxBalance));
+    }
+
+    /**
+     * Widens an amount to {@link Operation#MINOR_UNITS_SCALE} decimals, the amounts with more decimals being kept as
+     * they are.
+     *
+     * @param amount
+     *            the amount
+     * @return the amount with at least {@link Operation#MINOR_UNITS_SCALE} decimals
+     */
+    private static BigDecimal toMinorUnitsScale(final BigDecimal amount) {
+        return amount.scale() < Operation.MINOR_UNITS_SCALE ? amount.setScale(Operation.MINOR_UNITS_SCALE) : amount;
+    }
+
+    /**
+     * Calculates the net amount of an operation, missing amounts counting as zero.
+     *
+     * @param operation
+     *            the operation
+     * @return the credit minus the debit
+     */
+    static BigDecimal net(final Operation operation) {
+        BigDecimal net = operation.getCredit() == null ? BigDecimal.ZERO : operation.getCredit();
+        if (operation.getDebit() != null) {
+            net = net.subtract(operation.getDebit());
+        }
+        return net;
+    }
+
+    /**
+     * Gets the lock guarding the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the lock
+     */
+    private Lock lock(final String accountNumber) {
+        return this.locks.computeIfAbsent(accountNumber, key -> new ReentrantLock());
     }
 
 }
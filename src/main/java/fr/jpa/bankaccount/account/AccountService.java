@@ -1,6 +1,11 @@
 package fr.jpa.bankaccount.account;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import fr.jpa.bankaccount.bean.AccountStatement;
@@ -20,6 +25,9 @@ public class AccountService {
     /** Date provider. */
     private final DateProvider dateProvider;
 
+    /** Withdrawal rules. */
+    private final WithdrawalRules withdrawalRules;
+
     /**
      * Constructor.
      *
@@ -27,8 +35,23 @@ public class AccountService {
      *            the date provider
      */
     public AccountService(final AccountRepository accountRepository, final DateProvider dateProvider) {
+        this(accountRepository, dateProvider, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param accountRepository
+     *            the accounts storage
+     * @param dateProvider
+     *            the date provider
+     * @param withdrawalRules
+     *            the rules checked before accepting a withdrawal, or {@code null}
+     */
+    public AccountService(final AccountRepository accountRepository, final DateProvider dateProvider, final WithdrawalRules withdrawalRules) {
         this.accountRepository = accountRepository;
         this.dateProvider = dateProvider;
+        this.withdrawalRules = withdrawalRules;
     }
 
     /**
@@ -40,14 +63,32 @@ public class AccountService {
      *            the amount do deposit
      */
     public void depositMoney(final String accountNumber, final BigDecimal amount) {
+        this.depositMoney(accountNumber, amount, null);
+    }
+
+    /**
+     * Performs a money deposit on the account. A deposit submitted again with the same idempotency key, within
+     * {@link AccountRepository#DEDUPLICATION_RETENTION}, is ignored.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param amount
+     *            the amount do deposit
+     * @param idempotencyKey
+     *            the key identifying the request, or {@code null}
+     */
+    public void depositMoney(final String accountNumber, final BigDecimal amount, final String idempotencyKey) {
         if (accountNumber == null) {
             throw new IllegalArgumentException("The account number should be specified");
         }
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("The amount for the deposit must be positive");
         }
-        final Operation operation = new Operation(accountNumber, OperationType.DEPOSIT, this.dateProvider.getDate(), BigDecimal.ZERO, amount);
-        this.accountRepository.create(operation);
+        if (idempotencyKey == null) {
+            this.accountRepository.create(new Operation(accountNumber, OperationType.DEPOSIT, this.dateProvider.getDate(), BigDecimal.ZERO, amount));
+        } else {
+            this.accountRepository.createOnce(new Operation(accountNumber, OperationType.DEPOSIT, this.dateProvider.getDate(), BigDecimal.ZERO, amount, idempotencyKey), null);
+        }
     }
 
     /**
@@ -58,30 +99,92 @@ public class AccountService {
      * @param amount
      *            the amount to withdraw
      * @return a booleen that tells if the balance is positive or not
+     * @throws WithdrawalRejectedException
+     *             if the withdrawal breaks a withdrawal rule
      */
     public boolean withdrawMoney(final String accountNumber, final BigDecimal amount) {
+        return this.withdrawMoney(accountNumber, amount, null);
+    }
+
+    /**
+     * Performs a money withdrawal from the account. A withdrawal submitted again with the same idempotency key, within
+     * {@link AccountRepository#DEDUPLICATION_RETENTION}, is ignored and returns the result of the original withdrawal.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param amount
+     *            the amount to withdraw
+     * @param idempotencyKey
+     *            the key identifying the request, or {@code null}
+     * @return a booleen that tells if the balance is positive or not
+     * @throws WithdrawalRejectedException
+     *             if the withdrawal breaks a withdrawal rule
+     */
+    public boolean withdrawMoney(final String accountNumber, final BigDecimal amount, final String idempotencyKey) {
         if (accountNumber == null) {
             throw new IllegalArgumentException("The account number should be specified");
         }
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("The amount for the withdrawal must be positive");
         }
-        final Operation operation = new Operation(accountNumber, OperationType.WITHDRAWAL, this.dateProvider.getDate(), amount, BigDecimal.ZERO);
-        this.accountRepository.create(operation);
-        return this.accountRepository.calculateBalance(accountNumber).compareTo(BigDecimal.ZERO) >= 0;
+        if (idempotencyKey == null) {
+            this.accountRepository.create(new Operation(accountNumber, OperationType.WITHDRAWAL, this.dateProvider.getDate(), amount, BigDecimal.ZERO),
+                    this.withdrawalRules);
+            return this.accountRepository.calculateBalance(accountNumber).compareTo(BigDecimal.ZERO) >= 0;
+        }
+        return this.accountRepository.createOnce(new Operation(accountNumber, OperationType.WITHDRAWAL, this.dateProvider.getDate(), amount, BigDecimal.ZERO, idempotencyKey),
+                this.withdrawalRules);
     }
 
     /**
-     * Establishes the account statement of the account.
+     * Performs a money transfer between two accounts. The withdrawal and the deposit are created atomically.
+     *
+     * @param fromAccountNumber
+     *            the number of the account to withdraw from
+     * @param toAccountNumber
+     *            the number of the account to deposit to
+     * @param amount
+     *            the amount to transfer
+     * @return a booleen that tells if the balance of the debited account is positive or not
+     * @throws WithdrawalRejectedException
+     *             if the withdrawal breaks a withdrawal rule
+     */
+    public boolean transfer(final String fromAccountNumber, final String toAccountNumber, final BigDecimal amount) {
+        if (fromAccountNumber == null || toAccountNumber == null) {
+            throw new IllegalArgumentException("The account numbers should be specified");
+        }
+        if (fromAccountNumber.equals(toAccountNumber)) {
+            throw new IllegalArgumentException("The accounts of the transfer must be different");
+        }
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("The amount for the transfer must be positive");
+        }
+        final Instant date = this.dateProvider.getDate();
+        final List<Operation> operations = Arrays.asList( //
+                new Operation(fromAccountNumber, OperationType.WITHDRAWAL, date, amount, BigDecimal.ZERO), //
+                new Operation(toAccountNumber, OperationType.DEPOSIT, date, BigDecimal.ZERO, amount) //
+        );
+        this.accountRepository.createAll(operations, this.withdrawalRules);
+        return this.accountRepository.calculateBalance(fromAccountNumber).compareTo(BigDecimal.ZERO) >= 0;
+    }
+
+    /**
+     * Establishes the account statement of the account. The statement lists the operations kept in memory, the
+     * archived ones only counting through its opening balance. The operations and the balances are read from a single
+     * snapshot of the account, so that they add up even if the account is compacted meanwhile.
      *
      * @param accountNumber
      *            the account number
      * @return the account statement of the account
      */
     public AccountStatement establishAccountStatement(final String accountNumber) {
-        final List<Operation> operations = this.accountRepository.list(accountNumber);
-        final BigDecimal balance = this.accountRepository.calculateBalance(accountNumber);
-        return new AccountStatement(operations, balance);
+        if (accountNumber == null) {
+            throw new IllegalArgumentException("The account number should be specified");
+        }
+        final AccountSnapshot snapshot = this.accountRepository.snapshot(accountNumber);
+        final List<Operation> operations = new ArrayList<>(Arrays.asList(snapshot.getOperations()));
+        operations.sort(Comparator.comparing(Operation::getOperationDate).reversed());
+        return new AccountStatement(Collections.unmodifiableList(operations), snapshot.getOpeningBalance(), snapshot.getBalance());
     }
 
     /**
@@ -0,0 +1,128 @@
+package fr.jpa.bankaccount.account;
+
+import java.math.BigDecimal;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Consistent view of an account, taken under its lock.
+ *
+ * @author jpauchet
+ */
+final class AccountSnapshot {
+
+    /** Account number. */
+    private final String accountNumber;
+
+    /** Operations kept in memory. */
+    private final Operation[] operations;
+
+    /** Balance of the archived operations. */
+    private final BigDecimal openingBalance;
+
+    /** Number of archived operations. */
+    private final int archivedCount;
+
+    /** Size of the archive segment holding the archived operations. */
+    private final long archivedSize;
+
+    /** Stored balance. */
+    private final BigDecimal balance;
+
+    /** Version. */
+    private final long version;
+
+    /**
+     * Constructor.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param operations
+     *            the operations kept in memory
+     * @param openingBalance
+     *            the balance of the archived operations
+     * @param archivedCount
+     *            the number of archived operations
+     * @param archivedSize
+     *            the size of the archive segment holding the archived operations
+     * @param balance
+     *            the stored balance
+     * @param version
+     *            the version
+     */
+    AccountSnapshot(final String accountNumber, final Operation[] operations, final BigDecimal openingBalance, final int archivedCount, final long archivedSize,
+            final BigDecimal balance, final long version) {
+        this.accountNumber = accountNumber;
+        this.operations = operations;
+        this.openingBalance = openingBalance;
+        this.archivedCount = archivedCount;
+        this.archivedSize = archivedSize;
+        this.balance = balance;
+        this.version = version;
+    }
+
+    /**
+     * Gets the account number.
+     *
+     * @return the account number
+     */
+    String getAccountNumber() {
+        return this.accountNumber;
+    }
+
+    /**
+     * Gets the operations kept in memory.
+     *
+     * @return the operations
+     */
+    Operation[] getOperations() {
+        return this.operations;
+    }
+
+    /**
+     * Gets the balance of the archived operations.
+     *
+     * @return the opening balance
+     */
+    BigDecimal getOpeningBalance() {
+        return this.openingBalance;
+    }
+
+    /**
+     * Gets the number of archived operations.
+     *
+     * @return the number of archived operations
+     */
+    int getArchivedCount() {
+        return this.archivedCount;
+    }
+
+    /**
+     * Gets the size of the archive segment holding the archived operations, the blocks appended afterwards being
+     * ignored.
+     *
+     * @return the size of the archive segment
+     */
+    long getArchivedSize() {
+        return this.archivedSize;
+    }
+
+    /**
+     * Gets the stored balance.
+     *
+     * @return the stored balance
+     */
+    BigDecimal getBalance() {
+        return this.balance;
+    }
+
+    /**
+     * Gets the version.
+     *
+     * @return the version
+     */
+    long getVersion() {
+        return this.version;
+    }
+
+}
@@ -0,0 +1,116 @@
+package fr.jpa.bankaccount.account;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Net amounts and types of the operations of an account, in minor units and in chronological order, for the
+ * {@link AmountKernel}.
+ * <p>
+ * This class is not thread-safe: the account lock guards it.
+ *
+ * @author jpauchet
+ */
+final class AmountColumn {
+
+    /** Initial capacity. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Net amounts, in minor units. */
+    private long[] amounts;
+
+    /** Operation types, by ordinal. */
+    private int[] types;
+
+    /** Number of operations. */
+    private int size;
+
+    /** Date of the latest operation. */
+    private Instant latest;
+
+    /** Whether every amount is expressed in minor units. */
+    private boolean exact;
+
+    /** Highest absolute amount. */
+    private long maxAbsolute;
+
+    /**
+     * Constructor.
+     */
+    AmountColumn() {
+        this.amounts = new long[INITIAL_CAPACITY];
+        this.types = new int[INITIAL_CAPACITY];
+        this.exact = true;
+    }
+
+    /**
+     * Appends an operation.
+     *
+     * @param operation
+     *            the operation
+     * @return {@code false} if the operation is older than the latest one, in which case it is not appended
+     */
+    boolean append(final Operation operation) {
+        final Instant date = operation.getOperationDate();
+        if (this.latest != null && (date == null || date.isBefore(this.latest))) {
+            return false;
+        }
+        if (this.size == this.amounts.length) {
+            this.amounts = Arrays.copyOf(this.amounts, this.size * 2);
+            this.types = Arrays.copyOf(this.types, this.size * 2);
+        }
+        final long net = operation.getNetMinorUnits();
+        if (net == Operation.NOT_IN_MINOR_UNITS) {
+            this.exact = false;
+        } else {
+            this.maxAbsolute = Math.max(this.maxAbsolute, Math.abs(net));
+        }
+        this.amounts[this.size] = net;
+        this.types[this.size] = operation.getOperationType() == null ? -1 : operation.getOperationType().ordinal();
+        this.size++;
+        this.latest = date;
+        return true;
+    }
+
+    /**
+     * Tells whether the kernel can compute on the amounts, starting from an opening balance, without overflowing.
+     *
+     * @param openingBalance
+     *            the opening balance, in minor units
+     * @return {@code true} if the amounts are exact and their sums fit in a {@code long}
+     */
+    boolean isComputable(final long openingBalance) {
+        return this.exact && openingBalance != Operation.NOT_IN_MINOR_UNITS
+                && this.maxAbsolute <= (Long.MAX_VALUE - Math.abs(openingBalance)) / Math.max(this.size, 1);
+    }
+
+    /**
+     * Gets the net amounts. Only the first {@link #size()} are set.
+     *
+     * @return the net amounts, in minor units
+     */
+    long[] amounts() {
+        return this.amounts;
+    }
+
+    /**
+     * Gets the operation types, by ordinal. Only the first {@link #size()} are set.
+     *
+     * @return the operation types, {@code -1} meaning none
+     */
+    int[] types() {
+        return this.types;
+    }
+
+    /**
+     * Gets the number of operations.
+     *
+     * @return the number of operations
+     */
+    int size() {
+        return this.size;
+    }
+
+}
@@ -0,0 +1,87 @@
+package fr.jpa.bankaccount.account;
+
+/**
+ * Bulk computations over amounts in minor units, stored in primitive arrays.
+ * <p>
+ * The loops are kept free of calls, allocations and overflow checks, so that the JIT compiler can unroll and
+ * vectorize them. The callers must make sure that the sums cannot overflow.
+ *
+ * @author jpauchet
+ */
+public final class AmountKernel {
+
+    /**
+     * Constructor.
+     */
+    private AmountKernel() {
+        // utility class
+    }
+
+    /**
+     * Sums amounts.
+     *
+     * @param amounts
+     *            the amounts
+     * @param length
+     *            the number of amounts to sum, from the first one
+     * @return the sum
+     */
+    public static long sum(final long[] amounts, final int length) {
+        long sum = 0L;
+        for (int i = 0; i < length; i++) {
+            sum += amounts[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Sums amounts by type.
+     *
+     * @param amounts
+     *            the amounts
+     * @param types
+     *            the type of each amount, between {@code 0} and {@code typeCount - 1}
+     * @param length
+     *            the number of amounts to sum, from the first one
+     * @param typeCount
+     *            the number of types
+     * @return the sums, indexed by type
+     */
+    public static long[] sumByType(final long[] amounts, final int[] types, final int length, final int typeCount) {
+        final long[] sums = new long[typeCount];
+        for (int type = 0; type < typeCount; type++) {
+            long sum = 0L;
+            for (int i = 0; i < length; i++) {
+                // all ones when the types match, all zeros otherwise, so that there is no branch to mispredict
+                final int difference = types[i] ^ type;
+                sum += amounts[i] & ~((difference | -difference) >> 31);
+            }
+            sums[type] = sum;
+        }
+        return sums;
+    }
+
+    /**
+     * Computes the lowest and highest balances reached while applying amounts in order.
+     *
+     * @param openingBalance
+     *            the balance before the first amount, included in the range
+     * @param amounts
+     *            the amounts, in chronological order
+     * @param length
+     *            the number of amounts to apply, from the first one
+     * @return the lowest balance then the highest balance
+     */
+    public static long[] runningRange(final long openingBalance, final long[] amounts, final int length) {
+        long balance = openingBalance;
+        long min = openingBalance;
+        long max = openingBalance;
+        for (int i = 0; i < length; i++) {
+            balance += amounts[i];
+            min = Math.min(min, balance);
+            max = Math.max(max, balance);
+        }
+        return new long[] { min, max };
+    }
+
+}
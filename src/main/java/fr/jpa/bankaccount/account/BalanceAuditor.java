@@ -0,0 +1,271 @@
+package fr.jpa.bankaccount.account;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import fr.jpa.bankaccount.bean.AuditReport;
+import fr.jpa.bankaccount.bean.BalanceDiscrepancy;
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Checks the stored balances against the operations history.
+ * <p>
+ * Accounts are audited in parallel with fork-join. Each account is read from a snapshot taken under its lock, then
+ * recomputed without holding it, so that writers are only held back for the copy. Balances are recomputed in minor
+ * units with {@code long} arithmetic, falling back to {@link BigDecimal} for the accounts whose amounts do not fit.
+ * <p>
+ * The incremental audit only checks the accounts changed since they were last found consistent.
+ *
+ * @author jpauchet
+ */
+public class BalanceAuditor {
+
+    /** Number of accounts under which an audit task is no longer split. */
+    private static final int THRESHOLD = 64;
+
+    /** Accounts storage. */
+    private final AccountRepository accountRepository;
+
+    /** Pool running the audit tasks. */
+    private final ForkJoinPool pool;
+
+    /** Whether the opening balances are checked against the archived operations. */
+    private final boolean includeArchive;
+
+    /** Versions of the accounts last found consistent, by account number. */
+    private final Map<String, Long> auditedVersions;
+
+    /**
+     * Constructor.
+     *
+     * @param accountRepository
+     *            the accounts storage
+     */
+    public BalanceAuditor(final AccountRepository accountRepository) {
+        this(accountRepository, ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param accountRepository
+     *            the accounts storage
+     * @param pool
+     *            the pool running the audit tasks
+     * @param includeArchive
+     *            whether the opening balances are checked against the archived operations
+     */
+    public BalanceAuditor(final AccountRepository accountRepository, final ForkJoinPool pool, final boolean includeArchive) {
+        this.accountRepository = accountRepository;
+        this.pool = pool;
+        this.includeArchive = includeArchive;
+        this.auditedVersions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Audits all the accounts.
+     *
+     * @return the audit report
+     */
+    public AuditReport audit() {
+        return this.run(false);
+    }
+
+    /**
+     * Audits the accounts changed since they were last found consistent, and forgets the accounts no longer in the
+     * storage.
+     *
+     * @return the audit report
+     */
+    public AuditReport auditIncremental() {
+        this.auditedVersions.keySet().retainAll(this.accountRepository.getAccountNumbers());
+        return this.run(true);
+    }
+
+    /**
+     * Gets the numbers of the accounts last found consistent.
+     *
+     * @return the account numbers
+     */
+    Set<String> getAuditedAccountNumbers() {
+        return Collections.unmodifiableSet(this.auditedVersions.keySet());
+    }
+
+    /**
+     * Runs an audit.
+     *
+     * @param incremental
+     *            whether the accounts already found consistent are skipped
+     * @return the audit report
+     */
+    private AuditReport run(final boolean incremental) {
+        final long start = System.nanoTime();
+        final List<String> accountNumbers = new ArrayList<>();
+        for (final String accountNumber : this.accountRepository.getAccountNumbers()) {
+            if (!incremental || this.accountRepository.getVersion(accountNumber) != this.auditedVersions.getOrDefault(accountNumber, -1L)) {
+                accountNumbers.add(accountNumber);
+            }
+        }
+        final Tally tally = this.pool.invoke(new AuditTask(accountNumbers.toArray(new String[accountNumbers.size()]), 0, accountNumbers.size()));
+        return new AuditReport(tally.accounts, tally.operations, tally.discrepancies, System.nanoTime() - start);
+    }
+
+    /**
+     * Audits an account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param tally
+     *            the tally to update
+     */
+    private void audit(final String accountNumber, final Tally tally) {
+        final AccountSnapshot snapshot = this.accountRepository.snapshot(accountNumber);
+        final Operation[] operations = snapshot.getOperations();
+        boolean consistent = true;
+
+        long minorUnits = Operation.toMinorUnits(snapshot.getOpeningBalance());
+        boolean exact = minorUnits != Operation.NOT_IN_MINOR_UNITS;
+        for (int i = 0; exact && i < operations.length; i++) {
+            final long net = operations[i].getNetMinorUnits();
+            final long sum = minorUnits + net;
+            exact = net != Operation.NOT_IN_MINOR_UNITS && ((minorUnits ^ sum) & (net ^ sum)) >= 0;
+            minorUnits = sum;
+        }
+        if (exact) {
+            if (minorUnits != Operation.toMinorUnits(snapshot.getBalance())) {
+                consistent = false;
+                tally.discrepancies.add(new BalanceDiscrepancy(accountNumber, "balance", snapshot.getBalance(), BigDecimal.valueOf(minorUnits, Operation.MINOR_UNITS_SCALE)));
+            }
+        } else {
+            BigDecimal balance = snapshot.getOpeningBalance();
+            for (final Operation operation : operations) {
+                balance = balance.add(AccountRepository.net(operation));
+            }
+            if (balance.compareTo(snapshot.getBalance()) != 0) {
+                consistent = false;
+                tally.discrepancies.add(new BalanceDiscrepancy(accountNumber, "balance", snapshot.getBalance(), balance));
+            }
+        }
+        tally.operations += operations.length;
+
+        if (this.includeArchive && snapshot.getArchivedCount() > 0) {
+            List<Operation> archived;
+            try {
+                // the blocks appended by a concurrent compaction are past the snapshot size, and not read
+                archived = this.accountRepository.getOperationArchive().load(accountNumber, null, null, snapshot.getArchivedSize());
+            } catch (final UncheckedIOException e) {
+                archived = null;
+                consistent = false;
+                tally.discrepancies.add(new BalanceDiscrepancy(accountNumber, "unreadable archive", snapshot.getOpeningBalance(), null));
+            }
+            if (archived != null) {
+                BigDecimal openingBalance = BigDecimal.ZERO;
+                for (int i = 0; i < snapshot.getArchivedCount() && i < archived.size(); i++) {
+                    openingBalance = openingBalance.add(AccountRepository.net(archived.get(i)));
+                }
+                if (archived.size() < snapshot.getArchivedCount() || openingBalance.compareTo(snapshot.getOpeningBalance()) != 0) {
+                    consistent = false;
+                    tally.discrepancies.add(new BalanceDiscrepancy(accountNumber, "opening balance", snapshot.getOpeningBalance(), openingBalance));
+                }
+            }
+            tally.operations += snapshot.getArchivedCount();
+        }
+
+        tally.accounts++;
+        if (consistent) {
+            this.auditedVersions.put(accountNumber, snapshot.getVersion());
+        } else {
+            this.auditedVersions.remove(accountNumber);
+        }
+    }
+
+    /**
+     * Audit counters.
+     */
+    private static final class Tally {
+
+        /** Number of audited accounts. */
+        private int accounts;
+
+        /** Number of audited operations. */
+        private long operations;
+
+        /** Discrepancies found. */
+        private final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+
+        /**
+         * Adds the counters of another tally.
+         *
+         * @param other
+         *            the other tally
+         * @return this tally
+         */
+        private Tally merge(final Tally other) {
+            this.accounts += other.accounts;
+            this.operations += other.operations;
+            this.discrepancies.addAll(other.discrepancies);
+            return this;
+        }
+
+    }
+
+    /**
+     * Audit of a range of accounts, split in halves until small enough.
+     */
+    private final class AuditTask extends RecursiveTask<Tally> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** Account numbers. */
+        private final String[] accountNumbers;
+
+        /** Start of the range, inclusive. */
+        private final int from;
+
+        /** End of the range, exclusive. */
+        private final int to;
+
+        /**
+         * Constructor.
+         *
+         * @param accountNumbers
+         *            the account numbers
+         * @param from
+         *            the start of the range, inclusive
+         * @param to
+         *            the end of the range, exclusive
+         */
+        private AuditTask(final String[] accountNumbers, final int from, final int to) {
+            this.accountNumbers = accountNumbers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                final Tally tally = new Tally();
+                for (int i = this.from; i < this.to; i++) {
+                    BalanceAuditor.this.audit(this.accountNumbers[i], tally);
+                }
+                return tally;
+            }
+            final int middle = (this.from + this.to) >>> 1;
+            final AuditTask left = new AuditTask(this.accountNumbers, this.from, middle);
+            left.fork();
+            final Tally right = new AuditTask(this.accountNumbers, middle, this.to).compute();
+            return left.join().merge(right);
+        }
+
+    }
+
+}
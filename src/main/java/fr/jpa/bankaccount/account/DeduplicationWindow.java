@@ -0,0 +1,182 @@
+package fr.jpa.bankaccount.account;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded and time-bounded record of the idempotency keys already submitted on an account, along with the result
+ * returned to the client.
+ * <p>
+ * Keys are kept in a ring buffer ordered by submission date and indexed by an exact hash lookup. The oldest key is
+ * evicted when the window is full, and keys older than the retention are ignored. The buffer grows on demand up to its
+ * capacity, so that quiet accounts only hold a few entries.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <V>
+ *            the type of the recorded results
+ * @author jpauchet
+ */
+public class DeduplicationWindow<V> {
+
+    /** Initial size of the ring buffer. */
+    private static final int INITIAL_SIZE = 16;
+
+    /** Maximum number of keys. */
+    private final int capacity;
+
+    /** Retention of the keys, in milliseconds. */
+    private final long retentionMillis;
+
+    /** Slots of the keys, by key. */
+    private final Map<String, Integer> index;
+
+    /** Keys. */
+    private String[] keys;
+
+    /** Submission dates, in milliseconds since the epoch. */
+    private long[] dates;
+
+    /** Results. */
+    private Object[] results;
+
+    /** Slot of the oldest key. */
+    private int head;
+
+    /** Number of keys. */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the maximum number of keys
+     * @param retention
+     *            the retention of the keys
+     */
+    public DeduplicationWindow(final int capacity, final Duration retention) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        if (retention == null || retention.isNegative() || retention.isZero()) {
+            throw new IllegalArgumentException("The retention must be positive");
+        }
+        this.capacity = capacity;
+        this.retentionMillis = retention.toMillis();
+        this.index = new HashMap<>();
+        final int initialSize = Math.min(INITIAL_SIZE, capacity);
+        this.keys = new String[initialSize];
+        this.dates = new long[initialSize];
+        this.results = new Object[initialSize];
+    }
+
+    /**
+     * Gets the result recorded for the key.
+     *
+     * @param key
+     *            the idempotency key
+     * @param now
+     *            the current date
+     * @return the recorded result, or {@code null} if the key is unknown or expired
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final String key, final Instant now) {
+        final Integer slot = this.index.get(key);
+        if (slot == null || this.isExpired(slot, now.toEpochMilli())) {
+            return null;
+        }
+        return (V) this.results[slot];
+    }
+
+    /**
+     * Records the result of the key.
+     *
+     * @param key
+     *            the idempotency key
+     * @param result
+     *            the result
+     * @param now
+     *            the current date
+     */
+    public void put(final String key, final V result, final Instant now) {
+        final long nowMillis = now.toEpochMilli();
+        while (this.size > 0 && this.isExpired(this.head, nowMillis)) {
+            this.evict();
+        }
+        final Integer existing = this.index.get(key);
+        if (existing != null) {
+            this.results[existing] = result;
+            return;
+        }
+        if (this.size == this.keys.length) {
+            if (this.keys.length < this.capacity) {
+                this.grow();
+            } else {
+                this.evict();
+            }
+        }
+        final int slot = (this.head + this.size) % this.keys.length;
+        this.keys[slot] = key;
+        this.dates[slot] = nowMillis;
+        this.results[slot] = result;
+        this.index.put(key, slot);
+        this.size++;
+    }
+
+    /**
+     * Gets the number of keys.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Tells if the key in the slot is expired.
+     *
+     * @param slot
+     *            the slot
+     * @param nowMillis
+     *            the current date, in milliseconds since the epoch
+     * @return {@code true} if the key is expired
+     */
+    private boolean isExpired(final int slot, final long nowMillis) {
+        return nowMillis - this.dates[slot] > this.retentionMillis;
+    }
+
+    /**
+     * Evicts the oldest key.
+     */
+    private void evict() {
+        this.index.remove(this.keys[this.head]);
+        this.keys[this.head] = null;
+        this.results[this.head] = null;
+        this.head = (this.head + 1) % this.keys.length;
+        this.size--;
+    }
+
+    /**
+     * Doubles the size of the ring buffer, without exceeding the capacity.
+     */
+    private void grow() {
+        final int newSize = (int) Math.min((long) this.keys.length * 2, this.capacity);
+        final String[] newKeys = new String[newSize];
+        final long[] newDates = new long[newSize];
+        final Object[] newResults = new Object[newSize];
+        for (int i = 0; i < this.size; i++) {
+            final int slot = (this.head + i) % this.keys.length;
+            newKeys[i] = this.keys[slot];
+            newDates[i] = this.dates[slot];
+            newResults[i] = this.results[slot];
+            this.index.put(newKeys[i], i);
+        }
+        this.keys = newKeys;
+        this.dates = newDates;
+        this.results = newResults;
+        this.head = 0;
+    }
+
+}
@@ -0,0 +1,139 @@
+package fr.jpa.bankaccount.account;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Sum of the values recorded over a sliding time window, kept in a wheel of time buckets.
+ * <p>
+ * The window slides by whole buckets: a value leaves the window once its bucket is older than the window. Recording and
+ * reading are constant time, each bucket being cleared at most once per turn of the wheel.
+ * <p>
+ * The values must not be negative. The sums saturate at {@link Long#MAX_VALUE} instead of overflowing.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author jpauchet
+ */
+public class SlidingWindowCounter {
+
+    /** Width of a bucket, in milliseconds. */
+    private final long bucketMillis;
+
+    /** Sums of the buckets. */
+    private final long[] buckets;
+
+    /** Index of the latest bucket since the epoch. */
+    private long latest;
+
+    /** Sum of the buckets. */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param window
+     *            the duration of the window
+     * @param bucketCount
+     *            the number of buckets dividing the window
+     */
+    public SlidingWindowCounter(final Duration window, final int bucketCount) {
+        if (bucketCount <= 0) {
+            throw new IllegalArgumentException("The number of buckets must be positive");
+        }
+        if (window == null || window.toMillis() < bucketCount) {
+            throw new IllegalArgumentException("The window must last at least one millisecond per bucket");
+        }
+        this.bucketMillis = window.toMillis() / bucketCount;
+        this.buckets = new long[bucketCount];
+        this.latest = Long.MIN_VALUE;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param epochMillis
+     *            the date of the value, in milliseconds since the epoch
+     * @param value
+     *            the value, not negative
+     */
+    public void add(final long epochMillis, final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("The value must not be negative");
+        }
+        final long bucket = Math.floorDiv(epochMillis, this.bucketMillis);
+        this.advance(bucket);
+        if (this.latest - bucket < this.buckets.length) {
+            final int slot = this.slot(bucket);
+            this.buckets[slot] = saturatedAdd(this.buckets[slot], value);
+            this.total = saturatedAdd(this.total, value);
+        }
+    }
+
+    /**
+     * Gets the sum of the values within the window ending at a date.
+     *
+     * @param epochMillis
+     *            the end of the window, in milliseconds since the epoch
+     * @return the sum of the values
+     */
+    public long total(final long epochMillis) {
+        this.advance(Math.floorDiv(epochMillis, this.bucketMillis));
+        return this.total;
+    }
+
+    /**
+     * Moves the wheel forward to a bucket, clearing the buckets leaving the window.
+     *
+     * @param bucket
+     *            the index of the bucket since the epoch
+     */
+    private void advance(final long bucket) {
+        if (this.latest == Long.MIN_VALUE || bucket - this.latest >= this.buckets.length) {
+            Arrays.fill(this.buckets, 0L);
+            this.total = 0;
+            this.latest = bucket;
+            return;
+        }
+        final boolean saturated = this.total == Long.MAX_VALUE;
+        while (this.latest < bucket) {
+            this.latest++;
+            final int slot = this.slot(this.latest);
+            this.total -= this.buckets[slot];
+            this.buckets[slot] = 0;
+        }
+        if (saturated) {
+            // the saturated total no longer tells the sum of the buckets left
+            this.total = 0;
+            for (final long sum : this.buckets) {
+                this.total = saturatedAdd(this.total, sum);
+            }
+        }
+    }
+
+    /**
+     * Adds two values that are not negative, saturating at {@link Long#MAX_VALUE}.
+     *
+     * @param a
+     *            the first value
+     * @param b
+     *            the second value
+     * @return the sum, or {@link Long#MAX_VALUE} if it overflows
+     */
+    private static long saturatedAdd(final long a, final long b) {
+        final long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Gets the slot of a bucket in the wheel.
+     *
+     * @param bucket
+     *            the index of the bucket since the epoch
+     * @return the slot
+     */
+    private int slot(final long bucket) {
+        return (int) Math.floorMod(bucket, (long) this.buckets.length);
+    }
+
+}
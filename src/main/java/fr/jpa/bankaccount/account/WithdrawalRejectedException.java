@@ -0,0 +1,23 @@
+package fr.jpa.bankaccount.account;
+
+/**
+ * Thrown when a withdrawal breaks a {@link WithdrawalRules withdrawal rule}.
+ *
+ * @author jpauchet
+ */
+public class WithdrawalRejectedException extends IllegalStateException {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param message
+     *            the broken rule
+     */
+    public WithdrawalRejectedException(final String message) {
+        super(message);
+    }
+
+}
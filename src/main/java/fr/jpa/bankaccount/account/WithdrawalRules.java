@@ -0,0 +1,112 @@
+package fr.jpa.bankaccount.account;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Limits applied to the withdrawals before they are accepted.
+ * <p>
+ * The rules are checked in constant time against the stored balance and the sliding windows of the account activity,
+ * which the {@link AccountRepository} updates as the operations are created. The windows slide by whole buckets: an
+ * hour for the daily amount, a minute for the hourly count.
+ *
+ * @author jpauchet
+ */
+public final class WithdrawalRules {
+
+    /** Maximum amount withdrawn over a day. */
+    private final BigDecimal maxAmountPerDay;
+
+    /** Maximum number of withdrawals over an hour. */
+    private final Integer maxCountPerHour;
+
+    /** Lowest balance allowed after a withdrawal. */
+    private final BigDecimal overdraftFloor;
+
+    /** Maximum amount withdrawn over a day, in minor units. */
+    private final long maxMinorUnitsPerDay;
+
+    /**
+     * Constructor.
+     *
+     * @param maxAmountPerDay
+     *            the maximum amount withdrawn over a day, or {@code null} for no limit
+     * @param maxCountPerHour
+     *            the maximum number of withdrawals over an hour, or {@code null} for no limit
+     * @param overdraftFloor
+     *            the lowest balance allowed after a withdrawal, or {@code null} for no limit
+     */
+    public WithdrawalRules(final BigDecimal maxAmountPerDay, final Integer maxCountPerHour, final BigDecimal overdraftFloor) {
+        if (maxAmountPerDay != null && maxAmountPerDay.signum() < 0) {
+            throw new IllegalArgumentException("The maximum amount per day must not be negative");
+        }
+        if (maxCountPerHour != null && maxCountPerHour < 0) {
+            throw new IllegalArgumentException("The maximum number of withdrawals per hour must not be negative");
+        }
+        this.maxAmountPerDay = maxAmountPerDay;
+        this.maxCountPerHour = maxCountPerHour;
+        this.overdraftFloor = overdraftFloor;
+        final long maxMinorUnits = Operation.toMinorUnits(maxAmountPerDay, RoundingMode.FLOOR);
+        this.maxMinorUnitsPerDay = maxAmountPerDay == null || maxMinorUnits == Operation.NOT_IN_MINOR_UNITS ? Long.MAX_VALUE : maxMinorUnits;
+    }
+
+    /**
+     * Checks a withdrawal.
+     *
+     * @param operation
+     *            the withdrawal
+     * @param balance
+     *            the balance of the account before the withdrawal
+     * @param activity
+     *            the recent withdrawals of the account, or {@code null} if there is none
+     * @throws WithdrawalRejectedException
+     *             if the withdrawal breaks a rule
+     */
+    void check(final Operation operation, final BigDecimal balance, final AccountActivity activity) {
+        final long epochMillis = operation.getOperationDate().toEpochMilli();
+        if (this.overdraftFloor != null && balance.subtract(operation.getDebit()).compareTo(this.overdraftFloor) < 0) {
+            throw new WithdrawalRejectedException("The balance would go below the overdraft floor");
+        }
+        if (this.maxCountPerHour != null && activity != null && activity.hourlyCount(epochMillis) >= this.maxCountPerHour) {
+            throw new WithdrawalRejectedException("The maximum number of withdrawals per hour is reached");
+        }
+        if (this.maxAmountPerDay != null) {
+            final long withdrawn = activity == null ? 0L : activity.dailyAmount(epochMillis);
+            final long debited = AccountActivity.withdrawnMinorUnits(operation);
+            // compared by a subtraction that cannot overflow, the amounts being between zero and Long.MAX_VALUE
+            if (debited > this.maxMinorUnitsPerDay - withdrawn) {
+                throw new WithdrawalRejectedException("The maximum amount withdrawn per day would be exceeded");
+            }
+        }
+    }
+
+    /**
+     * Gets the maximum amount withdrawn over a day.
+     *
+     * @return the maximum amount, or {@code null} for no limit
+     */
+    public BigDecimal getMaxAmountPerDay() {
+        return this.maxAmountPerDay;
+    }
+
+    /**
+     * Gets the maximum number of withdrawals over an hour.
+     *
+     * @return the maximum number, or {@code null} for no limit
+     */
+    public Integer getMaxCountPerHour() {
+        return this.maxCountPerHour;
+    }
+
+    /**
+     * Gets the lowest balance allowed after a withdrawal.
+     *
+     * @return the overdraft floor, or {@code null} for no limit
+     */
+    public BigDecimal getOverdraftFloor() {
+        return this.overdraftFloor;
+    }
+
+}
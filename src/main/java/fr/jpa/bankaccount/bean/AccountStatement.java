@@ -1,5 +1,6 @@
 package fr.jpa.bankaccount.bean;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -10,14 +11,23 @@ import java.util.Locale;
 
 /**
  * Bank account statement.
+ * <p>
+ * The operations archived out of the account only count through the opening balance, printed above the operations
+ * when it is not zero, so that the printed operations add up to the balance.
  *
  * @author jpauchet
  */
-public final class AccountStatement {
+public final class AccountStatement implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
 
     /** Operations on the account. */
     private final List<Operation> operations;
 
+    /** Balance carried forward from the archived operations. */
+    private final BigDecimal openingBalance;
+
     /** Balance. */
     private final BigDecimal balance;
 
@@ -30,7 +40,22 @@ public final class AccountStatement {
      *            the balance
      */
     public AccountStatement(final List<Operation> operations, final BigDecimal balance) {
+        this(operations, BigDecimal.ZERO, balance);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param operations
+     *            the operations
+     * @param openingBalance
+     *            the balance carried forward from the archived operations, {@code null} meaning zero
+     * @param balance
+     *            the balance
+     */
+    public AccountStatement(final List<Operation> operations, final BigDecimal openingBalance, final BigDecimal balance) {
         this.operations = operations;
+        this.openingBalance = openingBalance == null ? BigDecimal.ZERO : openingBalance;
         this.balance = balance;
     }
 
@@ -42,6 +67,11 @@ public final class AccountStatement {
                 .withLocale(Locale.FRANCE) //
                 .withZone(ZoneId.of("GMT+1"));
         final StringBuilder printed = new StringBuilder();
+        if (this.openingBalance.signum() != 0) {
+            printed.append("Opening balance\r\n");
+            printed.append(this.openingBalance);
+            printed.append("\r\n\r\n");
+        }
         printed.append("Operation  | Date           | Credit | Debit\r\n");
         for (final Operation operation : this.operations) {
             printed.append(String.format("%-10s", operation.getOperationType().getLabel()));
@@ -69,6 +99,15 @@ public final class AccountStatement {
         return Collections.unmodifiableList(this.operations);
     }
 
+    /**
+     * Gets the balance carried forward from the archived operations.
+     *
+     * @return the opening balance
+     */
+    public BigDecimal getOpeningBalance() {
+        return this.openingBalance;
+    }
+
     /**
      * Gets the balance.
      *
@@ -0,0 +1,89 @@
+package fr.jpa.bankaccount.bean;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a balance audit.
+ *
+ * @author jpauchet
+ */
+public final class AuditReport {
+
+    /** Number of audited accounts. */
+    private final int accounts;
+
+    /** Number of audited operations. */
+    private final long operations;
+
+    /** Discrepancies found. */
+    private final List<BalanceDiscrepancy> discrepancies;
+
+    /** Duration of the audit, in nanoseconds. */
+    private final long elapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param accounts
+     *            the number of audited accounts
+     * @param operations
+     *            the number of audited operations
+     * @param discrepancies
+     *            the discrepancies found
+     * @param elapsedNanos
+     *            the duration of the audit, in nanoseconds
+     */
+    public AuditReport(final int accounts, final long operations, final List<BalanceDiscrepancy> discrepancies, final long elapsedNanos) {
+        this.accounts = accounts;
+        this.operations = operations;
+        this.discrepancies = discrepancies;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of audited accounts.
+     *
+     * @return the number of audited accounts
+     */
+    public int getAccounts() {
+        return this.accounts;
+    }
+
+    /**
+     * Gets the number of audited operations.
+     *
+     * @return the number of audited operations
+     */
+    public long getOperations() {
+        return this.operations;
+    }
+
+    /**
+     * Gets the discrepancies found.
+     *
+     * @return the discrepancies
+     */
+    public List<BalanceDiscrepancy> getDiscrepancies() {
+        return Collections.unmodifiableList(this.discrepancies);
+    }
+
+    /**
+     * Gets the duration of the audit.
+     *
+     * @return the duration, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Gets the throughput of the audit.
+     *
+     * @return the number of audited operations per second
+     */
+    public double getOperationsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.operations * 1e9 / this.elapsedNanos;
+    }
+
+}
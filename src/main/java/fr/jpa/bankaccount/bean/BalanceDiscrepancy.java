@@ -0,0 +1,79 @@
+package fr.jpa.bankaccount.bean;
+
+import java.math.BigDecimal;
+
+/**
+ * Mismatch between a stored balance and the balance computed from the operations.
+ *
+ * @author jpauchet
+ */
+public final class BalanceDiscrepancy {
+
+    /** Account number. */
+    private final String accountNumber;
+
+    /** Description of the mismatching balance. */
+    private final String description;
+
+    /** Stored balance. */
+    private final BigDecimal storedBalance;
+
+    /** Balance computed from the operations. */
+    private final BigDecimal computedBalance;
+
+    /**
+     * Constructor.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param description
+     *            the description of the mismatching balance
+     * @param storedBalance
+     *            the stored balance
+     * @param computedBalance
+     *            the balance computed from the operations
+     */
+    public BalanceDiscrepancy(final String accountNumber, final String description, final BigDecimal storedBalance, final BigDecimal computedBalance) {
+        this.accountNumber = accountNumber;
+        this.description = description;
+        this.storedBalance = storedBalance;
+        this.computedBalance = computedBalance;
+    }
+
+    /**
+     * Gets the account number.
+     *
+     * @return the account number
+     */
+    public String getAccountNumber() {
+        return this.accountNumber;
+    }
+
+    /**
+     * Gets the description of the mismatching balance.
+     *
+     * @return the description
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * Gets the stored balance.
+     *
+     * @return the stored balance
+     */
+    public BigDecimal getStoredBalance() {
+        return this.storedBalance;
+    }
+
+    /**
+     * Gets the balance computed from the operations.
+     *
+     * @return the computed balance
+     */
+    public BigDecimal getComputedBalance() {
+        return this.computedBalance;
+    }
+
+}
@@ -0,0 +1,129 @@
+package fr.jpa.bankaccount.bean;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+import fr.jpa.bankaccount.account.OperationType;
+
+/**
+ * Aggregates of the operations of an account, excluding the archived ones, which only count through the opening
+ * balance.
+ * <p>
+ * The amounts have at least {@link Operation#MINOR_UNITS_SCALE} decimals, whatever the scale of the operations, and
+ * should be compared with {@link BigDecimal#compareTo} to the amounts computed elsewhere.
+ *
+ * @author jpauchet
+ */
+public final class BalanceSummary {
+
+    /** Account number. */
+    private final String accountNumber;
+
+    /** Number of operations. */
+    private final int operations;
+
+    /** Balance. */
+    private final BigDecimal balance;
+
+    /** Net amount of the operations of each type. */
+    private final Map<OperationType, BigDecimal> totals;
+
+    /** Lowest balance reached. */
+    private final BigDecimal minBalance;
+
+    /** Highest balance reached. */
+    private final BigDecimal maxBalance;
+
+    /**
+     * Constructor.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param operations
+     *            the number of operations
+     * @param balance
+     *            the balance
+     * @param totals
+     *            the net amount of the operations of each type
+     * @param minBalance
+     *            the lowest balance reached
+     * @param maxBalance
+     *            the highest balance reached
+     */
+    public BalanceSummary(final String accountNumber, final int operations, final BigDecimal balance, final Map<OperationType, BigDecimal> totals,
+            final BigDecimal minBalance, final BigDecimal maxBalance) {
+        this.accountNumber = accountNumber;
+        this.operations = operations;
+        this.balance = balance;
+        this.totals = totals;
+        this.minBalance = minBalance;
+        this.maxBalance = maxBalance;
+    }
+
+    /**
+     * Gets the account number.
+     *
+     * @return the account number
+     */
+    public String getAccountNumber() {
+        return this.accountNumber;
+    }
+
+    /**
+     * Gets the number of operations.
+     *
+     * @return the number of operations
+     */
+    public int getOperations() {
+        return this.operations;
+    }
+
+    /**
+     * Gets the balance.
+     *
+     * @return the balance
+     */
+    public BigDecimal getBalance() {
+        return this.balance;
+    }
+
+    /**
+     * Gets the net amount (credit minus debit) of the operations of a type.
+     *
+     * @param operationType
+     *            the operation type
+     * @return the net amount, zero if there is no operation of this type
+     */
+    public BigDecimal getTotal(final OperationType operationType) {
+        return this.totals.getOrDefault(operationType, BigDecimal.ZERO);
+    }
+
+    /**
+     * Gets the net amount of the operations of each type.
+     *
+     * @return the net amounts, by operation type
+     */
+    public Map<OperationType, BigDecimal> getTotals() {
+        return Collections.unmodifiableMap(this.totals);
+    }
+
+    /**
+     * Gets the lowest balance reached, the opening balance included.
+     *
+     * @return the lowest balance
+     */
+    public BigDecimal getMinBalance() {
+        return this.minBalance;
+    }
+
+    /**
+     * Gets the highest balance reached, the opening balance included.
+     *
+     * @return the highest balance
+     */
+    public BigDecimal getMaxBalance() {
+        return this.maxBalance;
+    }
+
+}
@@ -1,6 +1,8 @@
 package fr.jpa.bankaccount.bean;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Instant;
 
 import fr.jpa.bankaccount.account.OperationType;
@@ -10,7 +12,16 @@ import fr.jpa.bankaccount.account.OperationType;
  *
  * @author jpauchet
  */
-public final class Operation {
+public final class Operation implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** Scale of the amounts expressed in minor units. */
+    public static final int MINOR_UNITS_SCALE = 2;
+
+    /** Marks an amount that cannot be expressed in minor units. */
+    public static final long NOT_IN_MINOR_UNITS = Long.MIN_VALUE;
 
     /** Account number. */
     private final String accountNumber;
@@ -27,6 +38,12 @@ public final class Operation {
     /** Credit amount. */
     private final BigDecimal credit;
 
+    /** Idempotency key identifying the request that submitted the operation. */
+    private final String idempotencyKey;
+
+    /** Net amount (credit minus debit) in minor units. */
+    private final long netMinorUnits;
+
     /**
      * Constructor.
      *
@@ -42,11 +59,90 @@ public final class Operation {
      *            the credit
      */
     public Operation(final String accountNumber, final OperationType operationType, final Instant operationDate, final BigDecimal debit, final BigDecimal credit) {
+        this(accountNumber, operationType, operationDate, debit, credit, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param operationType
+     *            the operation type
+     * @param operationDate
+     *            the operation date
+     * @param debit
+     *            the debit
+     * @param credit
+     *            the credit
+     * @param idempotencyKey
+     *            the idempotency key
+     */
+    public Operation(final String accountNumber, final OperationType operationType, final Instant operationDate, final BigDecimal debit, final BigDecimal credit,
+            final String idempotencyKey) {
         this.accountNumber = accountNumber;
         this.operationType = operationType;
         this.operationDate = operationDate;
         this.debit = debit;
         this.credit = credit;
+        this.idempotencyKey = idempotencyKey;
+        this.netMinorUnits = toNetMinorUnits(credit, debit);
+    }
+
+    /**
+     * Converts an amount in minor units.
+     *
+     * @param amount
+     *            the amount, {@code null} meaning zero
+     * @return the amount in minor units, or {@link #NOT_IN_MINOR_UNITS} if it is not representable
+     */
+    public static long toMinorUnits(final BigDecimal amount) {
+        return toMinorUnits(amount, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Converts an amount in minor units, rounding the fractions of minor units.
+     *
+     * @param amount
+     *            the amount, {@code null} meaning zero
+     * @param roundingMode
+     *            the rounding of the fractions of minor units
+     * @return the amount in minor units, or {@link #NOT_IN_MINOR_UNITS} if it does not fit in a {@code long} or needs
+     *         a rounding while the rounding mode is {@link RoundingMode#UNNECESSARY}
+     */
+    public static long toMinorUnits(final BigDecimal amount, final RoundingMode roundingMode) {
+        if (amount == null) {
+            return 0L;
+        }
+        try {
+            final long minorUnits = amount.setScale(MINOR_UNITS_SCALE, roundingMode).unscaledValue().longValueExact();
+            return minorUnits == NOT_IN_MINOR_UNITS ? NOT_IN_MINOR_UNITS : minorUnits;
+        } catch (final ArithmeticException e) {
+            return NOT_IN_MINOR_UNITS;
+        }
+    }
+
+    /**
+     * Converts the net amount of an operation in minor units.
+     *
+     * @param credit
+     *            the credit, {@code null} meaning zero
+     * @param debit
+     *            the debit, {@code null} meaning zero
+     * @return the net amount in minor units, or {@link #NOT_IN_MINOR_UNITS} if it is not representable
+     */
+    private static long toNetMinorUnits(final BigDecimal credit, final BigDecimal debit) {
+        final long creditMinorUnits = toMinorUnits(credit);
+        final long debitMinorUnits = toMinorUnits(debit);
+        if (creditMinorUnits == NOT_IN_MINOR_UNITS || debitMinorUnits == NOT_IN_MINOR_UNITS) {
+            return NOT_IN_MINOR_UNITS;
+        }
+        try {
+            final long net = Math.subtractExact(creditMinorUnits, debitMinorUnits);
+            return net == NOT_IN_MINOR_UNITS ? NOT_IN_MINOR_UNITS : net;
+        } catch (final ArithmeticException e) {
+            return NOT_IN_MINOR_UNITS;
+        }
     }
 
     /**
@@ -94,4 +190,23 @@ public final class Operation {
         return this.credit;
     }
 
+    /**
+     * Gets the idempotency key.
+     *
+     * @return the idempotency key, or {@code null} if the operation was submitted without one
+     */
+    public String getIdempotencyKey() {
+        return this.idempotencyKey;
+    }
+
+    /**
+     * Gets the net amount (credit minus debit) in minor units, that is in hundredths.
+     *
+     * @return the net amount in minor units, or {@link #NOT_IN_MINOR_UNITS} if the amounts have more decimals than
+     *         {@link #MINOR_UNITS_SCALE} or do not fit in a {@code long}
+     */
+    public long getNetMinorUnits() {
+        return this.netMinorUnits;
+    }
+
 }
@@ -0,0 +1,107 @@
+package fr.jpa.bankaccount.date;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Date provider reading a coarse clock cached by a background ticker.
+ * <p>
+ * The clock is only read once per tick instead of once per operation. The provided dates are strictly increasing:
+ * dates requested within the same tick, or after the clock went backwards, are the previous date plus one nanosecond,
+ * so that they keep the order in which they were requested.
+ *
+ * @author jpauchet
+ */
+public class CachedClockDateProvider implements DateProvider, AutoCloseable {
+
+    /** Nanoseconds per second. */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** Read clock. */
+    private final Clock clock;
+
+    /** Ticker refreshing the cached clock. */
+    private final ScheduledExecutorService ticker;
+
+    /** Date of the last tick, in nanoseconds since the epoch. */
+    private volatile long tickNanos;
+
+    /** Last provided date, in nanoseconds since the epoch. */
+    private final AtomicLong lastNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param tickInterval
+     *            the interval between two readings of the clock
+     */
+    public CachedClockDateProvider(final Duration tickInterval) {
+        this(Clock.systemUTC(), tickInterval);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param clock
+     *            the read clock
+     * @param tickInterval
+     *            the interval between two readings of the clock
+     */
+    public CachedClockDateProvider(final Clock clock, final Duration tickInterval) {
+        if (clock == null) {
+            throw new IllegalArgumentException("The clock should be specified");
+        }
+        if (tickInterval == null || tickInterval.isNegative() || tickInterval.isZero()) {
+            throw new IllegalArgumentException("The tick interval must be positive");
+        }
+        this.clock = clock;
+        this.lastNanos = new AtomicLong(Long.MIN_VALUE);
+        this.tick();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "date-provider-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long interval = tickInterval.toNanos();
+        this.ticker.scheduleAtFixedRate(this::tick, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the date.
+     *
+     * @return the date, strictly after any date previously provided
+     */
+    @Override
+    public Instant getDate() {
+        final long tick = this.tickNanos;
+        long last;
+        long next;
+        do {
+            last = this.lastNanos.get();
+            next = Math.max(tick, last + 1);
+        } while (!this.lastNanos.compareAndSet(last, next));
+        return Instant.ofEpochSecond(Math.floorDiv(next, NANOS_PER_SECOND), Math.floorMod(next, NANOS_PER_SECOND));
+    }
+
+    /**
+     * Stops the ticker.
+     */
+    @Override
+    public void close() {
+        this.ticker.shutdownNow();
+    }
+
+    /**
+     * Reads the clock.
+     */
+    void tick() {
+        final Instant now = this.clock.instant();
+        this.tickNanos = now.getEpochSecond() * NANOS_PER_SECOND + now.getNano();
+    }
+
+}
@@ -0,0 +1,191 @@
+package fr.jpa.bankaccount.feed;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * In-process ordered change-feed of the committed operations.
+ * <p>
+ * Operations are published into a lock-free bounded ring buffer. Each publisher claims a sequence number, waits for
+ * the previous occupant of its slot to be published, then writes the operation and publishes the sequence. Each
+ * {@link Subscription} reads the ring with its own cursor, so that subscribers progress independently.
+ *
+ * @author jpauchet
+ */
+public class OperationFeed {
+
+    /** Marks a slot being written. */
+    static final long WRITING = Long.MIN_VALUE;
+
+    /** Pause between two attempts of a waiting publisher or subscriber, in nanoseconds. */
+    private static final long PAUSE_NANOS = 1000L;
+
+    /** Size of the ring buffer. */
+    private final int capacity;
+
+    /** Mask giving the slot of a sequence. */
+    private final int mask;
+
+    /** Overflow policy. */
+    private final OverflowPolicy overflowPolicy;
+
+    /** Operations, by slot. */
+    private final AtomicReferenceArray<Operation> operations;
+
+    /** Sequences of the operations, by slot. */
+    private final AtomicLongArray sequences;
+
+    /** Next sequence to claim. */
+    private final AtomicLong nextSequence;
+
+    /** Subscriptions. */
+    private final List<Subscription> subscriptions;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the size of the ring buffer, a power of two
+     * @param overflowPolicy
+     *            the overflow policy
+     */
+    public OperationFeed(final int capacity, final OverflowPolicy overflowPolicy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("The overflow policy should be specified");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.operations = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            this.sequences.set(slot, slot - (long) capacity);
+        }
+        this.nextSequence = new AtomicLong();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Publishes an operation.
+     *
+     * @param operation
+     *            the operation
+     */
+    public void publish(final Operation operation) {
+        final long sequence = this.nextSequence.getAndIncrement();
+        if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+            while (sequence - this.slowestCursor(sequence) >= this.capacity) {
+                LockSupport.parkNanos(PAUSE_NANOS);
+            }
+        }
+        final int slot = this.slot(sequence);
+        while (this.sequences.get(slot) != sequence - this.capacity) {
+            LockSupport.parkNanos(PAUSE_NANOS);
+        }
+        this.sequences.set(slot, WRITING);
+        this.operations.set(slot, operation);
+        this.sequences.set(slot, sequence);
+    }
+
+    /**
+     * Subscribes to the operations published from now on.
+     *
+     * @return the subscription
+     */
+    public Subscription subscribe() {
+        final Subscription subscription = new Subscription(this, this.nextSequence.get());
+        this.subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Gets the size of the ring buffer.
+     *
+     * @return the size of the ring buffer
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Gets the overflow policy.
+     *
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Gets the sequence of the next operation to publish.
+     *
+     * @return the sequence of the next operation to publish
+     */
+    public long getNextSequence() {
+        return this.nextSequence.get();
+    }
+
+    /**
+     * Removes a subscription.
+     *
+     * @param subscription
+     *            the subscription
+     */
+    void unsubscribe(final Subscription subscription) {
+        this.subscriptions.remove(subscription);
+    }
+
+    /**
+     * Gets the slot of a sequence.
+     *
+     * @param sequence
+     *            the sequence
+     * @return the slot
+     */
+    int slot(final long sequence) {
+        return (int) (sequence & this.mask);
+    }
+
+    /**
+     * Gets the operations, by slot.
+     *
+     * @return the operations
+     */
+    AtomicReferenceArray<Operation> operations() {
+        return this.operations;
+    }
+
+    /**
+     * Gets the sequences of the operations, by slot.
+     *
+     * @return the sequences
+     */
+    AtomicLongArray sequences() {
+        return this.sequences;
+    }
+
+    /**
+     * Gets the cursor of the slowest subscriber.
+     *
+     * @param sequence
+     *            the sequence being published, returned when there is no subscriber
+     * @return the cursor of the slowest subscriber
+     */
+    private long slowestCursor(final long sequence) {
+        long slowest = sequence;
+        for (final Subscription subscription : this.subscriptions) {
+            slowest = Math.min(slowest, subscription.getCursor());
+        }
+        return slowest;
+    }
+
+}
@@ -0,0 +1,16 @@
+package fr.jpa.bankaccount.feed;
+
+/**
+ * Behaviour of the operation feed when its slowest subscriber is a full ring behind.
+ *
+ * @author jpauchet
+ */
+public enum OverflowPolicy {
+
+    /** Publishers wait for the slowest subscriber (back-pressure). */
+    BLOCK,
+
+    /** Publishers overwrite the oldest operations, lagging subscribers skip them. */
+    DROP_OLDEST;
+
+}
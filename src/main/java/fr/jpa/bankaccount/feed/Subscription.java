@@ -0,0 +1,133 @@
+package fr.jpa.bankaccount.feed;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Subscription to an {@link OperationFeed}, reading the operations in publication order with its own cursor.
+ * <p>
+ * A subscription is meant to be polled by a single consumer thread.
+ *
+ * @author jpauchet
+ */
+public final class Subscription implements AutoCloseable {
+
+    /** Pause between two attempts of a waiting poll, in nanoseconds. */
+    private static final long PAUSE_NANOS = 10000L;
+
+    /** Subscribed feed. */
+    private final OperationFeed feed;
+
+    /** Sequence of the next operation to read. */
+    private volatile long cursor;
+
+    /** Number of operations overwritten before being read. */
+    private long dropped;
+
+    /**
+     * Constructor.
+     *
+     * @param feed
+     *            the subscribed feed
+     * @param cursor
+     *            the sequence of the first operation to read
+     */
+    Subscription(final OperationFeed feed, final long cursor) {
+        this.feed = feed;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Reads the next batch of published operations, without waiting.
+     *
+     * @param maxBatchSize
+     *            the maximum number of operations to read
+     * @return the operations, possibly empty
+     */
+    public List<Operation> poll(final int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        final AtomicReferenceArray<Operation> operations = this.feed.operations();
+        final AtomicLongArray sequences = this.feed.sequences();
+        List<Operation> batch = null;
+        long next = this.cursor;
+        while (batch == null || batch.size() < maxBatchSize) {
+            final int slot = this.feed.slot(next);
+            final long published = sequences.get(slot);
+            if (published < next) {
+                break;
+            }
+            if (published > next) {
+                final long oldest = Math.max(next + 1, published - this.feed.getCapacity() + 1);
+                this.dropped += oldest - next;
+                next = oldest;
+                continue;
+            }
+            final Operation operation = operations.get(slot);
+            if (sequences.get(slot) != next) {
+                continue;
+            }
+            if (batch == null) {
+                batch = new ArrayList<>(Math.min(maxBatchSize, this.feed.getCapacity()));
+            }
+            batch.add(operation);
+            next++;
+        }
+        this.cursor = next;
+        return batch == null ? Collections.emptyList() : batch;
+    }
+
+    /**
+     * Reads the next batch of published operations, waiting for at least one operation.
+     *
+     * @param maxBatchSize
+     *            the maximum number of operations to read
+     * @param timeout
+     *            the maximum waiting time
+     * @return the operations, empty if the timeout elapsed
+     */
+    public List<Operation> poll(final int maxBatchSize, final Duration timeout) {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        List<Operation> batch = this.poll(maxBatchSize);
+        while (batch.isEmpty() && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(PAUSE_NANOS);
+            batch = this.poll(maxBatchSize);
+        }
+        return batch;
+    }
+
+    /**
+     * Gets the sequence of the next operation to read.
+     *
+     * @return the cursor
+     */
+    public long getCursor() {
+        return this.cursor;
+    }
+
+    /**
+     * Gets the number of operations overwritten before being read.
+     *
+     * @return the number of dropped operations
+     */
+    public long getDropped() {
+        return this.dropped;
+    }
+
+    /**
+     * Stops the subscription, releasing the publishers waiting for it.
+     */
+    @Override
+    public void close() {
+        this.feed.unsubscribe(this);
+    }
+
+}
@@ -0,0 +1,154 @@
+package fr.jpa.bankaccount.partition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Consistent hashing of the account numbers to the partitions.
+ * <p>
+ * Each partition is placed at several points (virtual nodes) of a 64-bit ring, and an account belongs to the first
+ * partition found clockwise from its hash. Adding a partition only moves the accounts falling on its new points. A
+ * point already taken by another partition is hashed again with a salt, so that removing a partition gives back all
+ * the points of the others.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author jpauchet
+ */
+public class ConsistentHashRing {
+
+    /** FNV-1a offset basis. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Number of points per partition. */
+    private final int virtualNodes;
+
+    /** Hash of the keys on the ring. */
+    private final ToLongFunction<String> hash;
+
+    /** Partitions, by point of the ring. */
+    private final TreeMap<Long, String> ring;
+
+    /** Points of the ring, by partition. */
+    private final Map<String, long[]> points;
+
+    /**
+     * Constructor.
+     *
+     * @param virtualNodes
+     *            the number of points per partition
+     */
+    public ConsistentHashRing(final int virtualNodes) {
+        this(virtualNodes, ConsistentHashRing::hash);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param virtualNodes
+     *            the number of points per partition
+     * @param hash
+     *            the hash of the keys on the ring
+     */
+    ConsistentHashRing(final int virtualNodes, final ToLongFunction<String> hash) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("The number of virtual nodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+        this.hash = hash;
+        this.ring = new TreeMap<>();
+        this.points = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a partition.
+     *
+     * @param partitionId
+     *            the partition identifier
+     */
+    public void add(final String partitionId) {
+        if (this.points.containsKey(partitionId)) {
+            throw new IllegalArgumentException("The partition " + partitionId + " already exists");
+        }
+        final long[] partitionPoints = new long[this.virtualNodes];
+        for (int i = 0; i < this.virtualNodes; i++) {
+            long point = this.hash.applyAsLong(partitionId + '#' + i);
+            for (int salt = 1; this.ring.containsKey(point); salt++) {
+                point = this.hash.applyAsLong(partitionId + '#' + i + '#' + salt);
+            }
+            this.ring.put(point, partitionId);
+            partitionPoints[i] = point;
+        }
+        this.points.put(partitionId, partitionPoints);
+    }
+
+    /**
+     * Removes a partition, its accounts going back to the partitions that owned them before it was added.
+     *
+     * @param partitionId
+     *            the partition identifier
+     */
+    public void remove(final String partitionId) {
+        final long[] partitionPoints = this.points.remove(partitionId);
+        if (partitionPoints == null) {
+            throw new IllegalArgumentException("The partition " + partitionId + " does not exist");
+        }
+        for (final long point : partitionPoints) {
+            this.ring.remove(point);
+        }
+    }
+
+    /**
+     * Gets the partition owning an account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the partition identifier
+     */
+    public String partitionOf(final String accountNumber) {
+        if (this.ring.isEmpty()) {
+            throw new IllegalStateException("No partition is available");
+        }
+        final Map.Entry<Long, String> owner = this.ring.ceilingEntry(this.hash.applyAsLong(accountNumber));
+        return owner == null ? this.ring.firstEntry().getValue() : owner.getValue();
+    }
+
+    /**
+     * Gets the partitions.
+     *
+     * @return the partition identifiers
+     */
+    public Set<String> getPartitions() {
+        return Collections.unmodifiableSet(this.points.keySet());
+    }
+
+    /**
+     * Hashes a key on the ring, with FNV-1a followed by a final mix spreading close keys.
+     *
+     * @param key
+     *            the key
+     * @return the point of the ring
+     */
+    static long hash(final String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
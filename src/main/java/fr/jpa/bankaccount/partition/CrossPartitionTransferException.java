@@ -0,0 +1,23 @@
+package fr.jpa.bankaccount.partition;
+
+/**
+ * Thrown when a transfer involves two accounts owned by different partitions.
+ *
+ * @author jpauchet
+ */
+public class CrossPartitionTransferException extends IllegalStateException {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param message
+     *            the reason of the rejection
+     */
+    public CrossPartitionTransferException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,108 @@
+package fr.jpa.bankaccount.partition;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.jpa.bankaccount.account.AccountService;
+
+/**
+ * In-process transport standing in for the network.
+ * <p>
+ * Each partition processes its requests on its own thread, as a node would, so that the partitions run in parallel
+ * while each of them handles one request at a time.
+ *
+ * @author jpauchet
+ */
+public class LoopbackTransport implements PartitionTransport, AutoCloseable {
+
+    /** Partitions, by identifier. */
+    private final Map<String, Partition> partitions;
+
+    /**
+     * Constructor.
+     */
+    public LoopbackTransport() {
+        this.partitions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers the account service of a partition.
+     *
+     * @param partitionId
+     *            the partition identifier
+     * @param accountService
+     *            the account service
+     */
+    public void register(final String partitionId, final AccountService accountService) {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "partition-" + partitionId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.partitions.putIfAbsent(partitionId, new Partition(accountService, executor)) != null) {
+            executor.shutdown();
+            throw new IllegalArgumentException("The partition " + partitionId + " is already registered");
+        }
+    }
+
+    @Override
+    public <T> T send(final String partitionId, final PartitionRequest<T> request) {
+        final Partition partition = this.partitions.get(partitionId);
+        if (partition == null) {
+            throw new IllegalArgumentException("The partition " + partitionId + " is not registered");
+        }
+        final Future<T> response = partition.executor.submit(() -> request.execute(partition.accountService));
+        try {
+            return response.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the partition " + partitionId, e);
+        }
+    }
+
+    /**
+     * Stops the threads of the partitions.
+     */
+    @Override
+    public void close() {
+        for (final Partition partition : this.partitions.values()) {
+            partition.executor.shutdown();
+        }
+    }
+
+    /**
+     * Registered partition.
+     */
+    private static final class Partition {
+
+        /** Account service. */
+        private final AccountService accountService;
+
+        /** Thread processing the requests. */
+        private final ExecutorService executor;
+
+        /**
+         * Constructor.
+         *
+         * @param accountService
+         *            the account service
+         * @param executor
+         *            the thread processing the requests
+         */
+        private Partition(final AccountService accountService, final ExecutorService executor) {
+            this.accountService = accountService;
+            this.executor = executor;
+        }
+
+    }
+
+}
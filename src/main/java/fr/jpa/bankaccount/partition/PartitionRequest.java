@@ -0,0 +1,30 @@
+package fr.jpa.bankaccount.partition;
+
+import java.io.Serializable;
+
+import fr.jpa.bankaccount.account.AccountService;
+
+/**
+ * Request executed by the account service of a partition.
+ * <p>
+ * Requests are serializable, as are the account numbers, amounts, {@link fr.jpa.bankaccount.bean.Operation operations},
+ * {@link fr.jpa.bankaccount.bean.AccountStatement statements} and {@link fr.jpa.bankaccount.account.AccountExport
+ * account copies} they capture or return, so that a transport can ship them and their responses to a remote partition.
+ *
+ * @param <T>
+ *            the type of the response
+ * @author jpauchet
+ */
+@FunctionalInterface
+public interface PartitionRequest<T> extends Serializable {
+
+    /**
+     * Executes the request.
+     *
+     * @param accountService
+     *            the account service of the partition
+     * @return the response
+     */
+    T execute(AccountService accountService);
+
+}
@@ -0,0 +1,23 @@
+package fr.jpa.bankaccount.partition;
+
+/**
+ * Carries the requests to the partitions.
+ *
+ * @author jpauchet
+ */
+public interface PartitionTransport {
+
+    /**
+     * Sends a request to a partition and waits for its response.
+     *
+     * @param partitionId
+     *            the partition identifier
+     * @param request
+     *            the request
+     * @param <T>
+     *            the type of the response
+     * @return the response
+     */
+    <T> T send(String partitionId, PartitionRequest<T> request);
+
+}
@@ -0,0 +1,252 @@
+package fr.jpa.bankaccount.partition;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+import fr.jpa.bankaccount.account.AccountExport;
+import fr.jpa.bankaccount.bean.AccountStatement;
+
+/**
+ * Bank accounts management spread over several partitions, each one an account service reached through a
+ * {@link PartitionTransport}.
+ * <p>
+ * Accounts are assigned to the partitions by a {@link ConsistentHashRing}. When a partition is added, the accounts it
+ * now owns are moved to it from their previous partitions, while the requests are held back.
+ * <p>
+ * A transfer is only performed when both accounts belong to the same partition, since no transaction spans several
+ * partitions. As adding a partition moves accounts, a transfer between two accounts can be rejected with a
+ * {@link CrossPartitionTransferException} once a partition has been added, even if it used to succeed.
+ *
+ * @author jpauchet
+ */
+public class PartitionedAccountService {
+
+    /** Transport to the partitions. */
+    private final PartitionTransport transport;
+
+    /** Assignment of the accounts to the partitions. */
+    private final ConsistentHashRing ring;
+
+    /** Lock holding the requests back while the accounts are moved. */
+    private final StampedLock routing;
+
+    /**
+     * Constructor.
+     *
+     * @param transport
+     *            the transport to the partitions
+     * @param virtualNodes
+     *            the number of points of each partition on the hash ring
+     */
+    public PartitionedAccountService(final PartitionTransport transport, final int virtualNodes) {
+        if (transport == null) {
+            throw new IllegalArgumentException("The transport should be specified");
+        }
+        this.transport = transport;
+        this.ring = new ConsistentHashRing(virtualNodes);
+        this.routing = new StampedLock();
+    }
+
+    /**
+     * Adds a partition, already reachable through the transport, and moves to it the accounts it now owns.
+     * <p>
+     * The accounts to move are all copied from their previous partitions first, archived operations and opening balance
+     * included, then restored on the new partition, and only removed from their previous partitions last, along with
+     * their archive segments. If the copy or the restoration fails, the restored accounts are removed from the new
+     * partition and the partition is not added.
+     *
+     * @param partitionId
+     *            the partition identifier
+     * @return the number of moved accounts
+     */
+    public int addPartition(final String partitionId) {
+        final long stamp = this.routing.writeLock();
+        try {
+            final List<String> previousPartitions = new ArrayList<>(this.ring.getPartitions());
+            this.ring.add(partitionId);
+            final Map<String, List<String>> moves = new LinkedHashMap<>();
+            final List<String> restored = new ArrayList<>();
+            try {
+                final List<AccountExport> copies = new ArrayList<>();
+                for (final String previousPartition : previousPartitions) {
+                    final List<String> accountNumbers = this.transport.send(previousPartition,
+                            accountService -> new ArrayList<>(accountService.getAccountRepository().getAccountNumbers()));
+                    for (final String accountNumber : accountNumbers) {
+                        if (partitionId.equals(this.ring.partitionOf(accountNumber))) {
+                            copies.add(this.transport.send(previousPartition, accountService -> accountService.getAccountRepository().export(accountNumber)));
+                            moves.computeIfAbsent(previousPartition, key -> new ArrayList<>()).add(accountNumber);
+                        }
+                    }
+                }
+                for (final AccountExport copy : copies) {
+                    this.transport.send(partitionId, accountService -> {
+                        accountService.getAccountRepository().restore(copy);
+                        return null;
+                    });
+                    restored.add(copy.getAccountNumber());
+                }
+            } catch (final RuntimeException e) {
+                for (final String accountNumber : restored) {
+                    try {
+                        this.transport.send(partitionId, accountService -> accountService.getAccountRepository().remove(accountNumber));
+                    } catch (final RuntimeException rollbackFailure) {
+                        e.addSuppressed(rollbackFailure);
+                    }
+                }
+                this.ring.remove(partitionId);
+                throw e;
+            }
+            for (final Map.Entry<String, List<String>> move : moves.entrySet()) {
+                for (final String accountNumber : move.getValue()) {
+                    this.transport.send(move.getKey(), accountService -> accountService.getAccountRepository().remove(accountNumber));
+                }
+            }
+            return restored.size();
+        } finally {
+            this.routing.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Performs a money deposit on the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param amount
+     *            the amount do deposit
+     */
+    public void depositMoney(final String accountNumber, final BigDecimal amount) {
+        this.depositMoney(accountNumber, amount, null);
+    }
+
+    /**
+     * Performs a money deposit on the account. A deposit submitted again with the same idempotency key is ignored by
+     * the partition owning the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param amount
+     *            the amount do deposit
+     * @param idempotencyKey
+     *            the key identifying the request, or {@code null}
+     */
+    public void depositMoney(final String accountNumber, final BigDecimal amount, final String idempotencyKey) {
+        this.route(accountNumber, accountService -> {
+            accountService.depositMoney(accountNumber, amount, idempotencyKey);
+            return null;
+        });
+    }
+
+    /**
+     * Performs a money withdrawal from the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param amount
+     *            the amount to withdraw
+     * @return a booleen that tells if the balance is positive or not
+     */
+    public boolean withdrawMoney(final String accountNumber, final BigDecimal amount) {
+        return this.withdrawMoney(accountNumber, amount, null);
+    }
+
+    /**
+     * Performs a money withdrawal from the account. A withdrawal submitted again with the same idempotency key is
+     * ignored by the partition owning the account, and returns the result of the original withdrawal.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param amount
+     *            the amount to withdraw
+     * @param idempotencyKey
+     *            the key identifying the request, or {@code null}
+     * @return a booleen that tells if the balance is positive or not
+     */
+    public boolean withdrawMoney(final String accountNumber, final BigDecimal amount, final String idempotencyKey) {
+        return this.route(accountNumber, accountService -> accountService.withdrawMoney(accountNumber, amount, idempotencyKey));
+    }
+
+    /**
+     * Performs a money transfer between two accounts of the same partition.
+     *
+     * @param fromAccountNumber
+     *            the number of the account to withdraw from
+     * @param toAccountNumber
+     *            the number of the account to deposit to
+     * @param amount
+     *            the amount to transfer
+     * @return a booleen that tells if the balance of the debited account is positive or not
+     * @throws CrossPartitionTransferException
+     *             if the accounts belong to different partitions
+     */
+    public boolean transfer(final String fromAccountNumber, final String toAccountNumber, final BigDecimal amount) {
+        if (fromAccountNumber == null || toAccountNumber == null) {
+            throw new IllegalArgumentException("The account numbers should be specified");
+        }
+        final long stamp = this.routing.readLock();
+        try {
+            final String partitionId = this.ring.partitionOf(fromAccountNumber);
+            if (!partitionId.equals(this.ring.partitionOf(toAccountNumber))) {
+                throw new CrossPartitionTransferException("The accounts " + fromAccountNumber + " and " + toAccountNumber + " belong to different partitions");
+            }
+            return this.transport.send(partitionId, accountService -> accountService.transfer(fromAccountNumber, toAccountNumber, amount));
+        } finally {
+            this.routing.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Establishes the account statement of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the account statement of the account
+     */
+    public AccountStatement establishAccountStatement(final String accountNumber) {
+        return this.route(accountNumber, accountService -> accountService.establishAccountStatement(accountNumber));
+    }
+
+    /**
+     * Gets the partition owning an account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the partition identifier
+     */
+    public String partitionOf(final String accountNumber) {
+        final long stamp = this.routing.readLock();
+        try {
+            return this.ring.partitionOf(accountNumber);
+        } finally {
+            this.routing.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Sends a request to the partition owning an account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param request
+     *            the request
+     * @param <T>
+     *            the type of the response
+     * @return the response
+     */
+    private <T> T route(final String accountNumber, final PartitionRequest<T> request) {
+        if (accountNumber == null) {
+            throw new IllegalArgumentException("The account number should be specified");
+        }
+        final long stamp = this.routing.readLock();
+        try {
+            return this.transport.send(this.ring.partitionOf(accountNumber), request);
+        } finally {
+            this.routing.unlockRead(stamp);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package fr.jpa.bankaccount.storage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Selects the cold operations of an account, to be moved to the archive.
+ *
+ * @author jpauchet
+ */
+public interface ArchivePolicy {
+
+    /**
+     * Counts the cold operations.
+     *
+     * @param operations
+     *            the operations kept in memory, from the oldest to the latest
+     * @param now
+     *            the current date
+     * @return the number of oldest operations to archive
+     */
+    int countColdOperations(List<Operation> operations, Instant now);
+
+    /**
+     * Keeps the latest operations in memory.
+     *
+     * @param count
+     *            the number of operations to keep
+     * @return the policy
+     */
+    static ArchivePolicy keepLatest(final int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The number of operations to keep must not be negative");
+        }
+        return (operations, now) -> Math.max(0, operations.size() - count);
+    }
+
+    /**
+     * Archives the operations older than an age.
+     *
+     * @param age
+     *            the age
+     * @return the policy
+     */
+    static ArchivePolicy olderThan(final Duration age) {
+        if (age == null || age.isNegative()) {
+            throw new IllegalArgumentException("The age must not be negative");
+        }
+        return (operations, now) -> {
+            final Instant limit = now.minus(age);
+            int cold = 0;
+            while (cold < operations.size() && operations.get(cold).getOperationDate().isBefore(limit)) {
+                cold++;
+            }
+            return cold;
+        };
+    }
+
+}
@@ -0,0 +1,287 @@
+package fr.jpa.bankaccount.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * On-disk archive of the cold operations.
+ * <p>
+ * Each account has its own segment file. Every archiving appends a compressed block of operations to the segment and
+ * forces it to the disk, so that the operations can safely be removed from memory afterwards. A block that cannot be
+ * written entirely is cut off the segment, so that the segment stays readable.
+ *
+ * @author jpauchet
+ */
+public class OperationArchive {
+
+    /** Extension of the segment files. */
+    private static final String EXTENSION = ".archive";
+
+    /** Directory of the segment files. */
+    private final Path directory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            the directory of the segment files
+     */
+    public OperationArchive(final Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("The archive directory should be specified");
+        }
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The archive directory cannot be created", e);
+        }
+    }
+
+    /**
+     * Appends operations to the segment of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param operations
+     *            the operations, from the oldest to the latest
+     * @return the size of the segment once the operations are appended
+     */
+    public long append(final String accountNumber, final List<Operation> operations) {
+        if (operations.isEmpty()) {
+            return this.size(accountNumber);
+        }
+        try (FileChannel channel = FileChannel.open(this.segment(accountNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            channel.position(size);
+            try {
+                final GZIPOutputStream compressed = new GZIPOutputStream(Channels.newOutputStream(channel));
+                final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(compressed));
+                output.writeInt(operations.size());
+                for (final Operation operation : operations) {
+                    OperationCodec.write(operation, output);
+                }
+                output.flush();
+                compressed.finish();
+                channel.force(true);
+                return channel.size();
+            } catch (final IOException | RuntimeException e) {
+                channel.truncate(size);
+                throw e;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The operations of the account " + accountNumber + " cannot be archived", e);
+        }
+    }
+
+    /**
+     * Gets the size of the segment of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the size of the segment, zero if the account has no segment
+     */
+    public long size(final String accountNumber) {
+        final Path segment = this.segment(accountNumber);
+        try {
+            return Files.exists(segment) ? Files.size(segment) : 0L;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The archive of the account " + accountNumber + " cannot be read", e);
+        }
+    }
+
+    /**
+     * Cuts the segment of the account back to a former size, dropping the blocks appended since.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param size
+     *            the former size of the segment
+     */
+    public void truncate(final String accountNumber, final long size) {
+        final Path segment = this.segment(accountNumber);
+        if (!Files.exists(segment)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+                channel.force(true);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The archive of the account " + accountNumber + " cannot be truncated", e);
+        }
+    }
+
+    /**
+     * Deletes the segment of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     */
+    public void delete(final String accountNumber) {
+        try {
+            Files.deleteIfExists(this.segment(accountNumber));
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The archive of the account " + accountNumber + " cannot be deleted", e);
+        }
+    }
+
+    /**
+     * Loads the archived operations of the account within a period.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param from
+     *            the start of the period, inclusive, or {@code null}
+     * @param to
+     *            the end of the period, exclusive, or {@code null}
+     * @return the archived operations, from the oldest to the latest
+     */
+    public List<Operation> load(final String accountNumber, final Instant from, final Instant to) {
+        return this.load(accountNumber, from, to, Long.MAX_VALUE);
+    }
+
+    /**
+     * Loads the archived operations of the account within a period, from the start of the segment up to a former size
+     * of the segment, so that the blocks being appended concurrently are ignored.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param from
+     *            the start of the period, inclusive, or {@code null}
+     * @param to
+     *            the end of the period, exclusive, or {@code null}
+     * @param size
+     *            the former size of the segment
+     * @return the archived operations, from the oldest to the latest
+     */
+    public List<Operation> load(final String accountNumber, final Instant from, final Instant to, final long size) {
+        final List<Operation> operations = new ArrayList<>();
+        final Path segment = this.segment(accountNumber);
+        if (size <= 0L || this.size(accountNumber) == 0L) {
+            return operations;
+        }
+        try (InputStream file = new BoundedInputStream(Files.newInputStream(segment), size);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new BufferedInputStream(file))))) {
+            while (true) {
+                final int count;
+                try {
+                    count = input.readInt();
+                } catch (final EOFException e) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    final Operation operation = OperationCodec.read(input);
+                    final Instant date = operation.getOperationDate();
+                    if ((from == null || !date.isBefore(from)) && (to == null || date.isBefore(to))) {
+                        operations.add(operation);
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The archive of the account " + accountNumber + " cannot be read", e);
+        }
+        return operations;
+    }
+
+    /**
+     * Input stream ending after a number of bytes.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        /** Number of bytes left. */
+        private long remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param input
+         *            the underlying input stream
+         * @param size
+         *            the number of bytes to read
+         */
+        private BoundedInputStream(final InputStream input, final long size) {
+            super(input);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int read = super.read();
+            if (read >= 0) {
+                this.remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int read = super.read(buffer, offset, (int) Math.min(length, this.remaining));
+            if (read > 0) {
+                this.remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            final long skipped = super.skip(Math.min(count, this.remaining));
+            this.remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), this.remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Gets the segment file of the account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return the segment file
+     */
+    private Path segment(final String accountNumber) {
+        try {
+            return this.directory.resolve(URLEncoder.encode(accountNumber, "UTF-8") + EXTENSION);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
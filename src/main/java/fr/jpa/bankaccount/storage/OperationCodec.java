@@ -0,0 +1,107 @@
+package fr.jpa.bankaccount.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import fr.jpa.bankaccount.account.OperationType;
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Binary serialization of the operations.
+ *
+ * @author jpauchet
+ */
+public final class OperationCodec {
+
+    /**
+     * Constructor.
+     */
+    private OperationCodec() {
+        // utility class
+    }
+
+    /**
+     * Writes an operation.
+     *
+     * @param operation
+     *            the operation
+     * @param output
+     *            the output
+     * @throws IOException
+     *             if the operation cannot be written
+     */
+    public static void write(final Operation operation, final DataOutput output) throws IOException {
+        writeString(operation.getAccountNumber(), output);
+        output.writeByte(operation.getOperationType() == null ? -1 : operation.getOperationType().ordinal());
+        final Instant operationDate = operation.getOperationDate();
+        output.writeBoolean(operationDate != null);
+        if (operationDate != null) {
+            output.writeLong(operationDate.getEpochSecond());
+            output.writeInt(operationDate.getNano());
+        }
+        writeString(operation.getDebit() == null ? null : operation.getDebit().toString(), output);
+        writeString(operation.getCredit() == null ? null : operation.getCredit().toString(), output);
+        writeString(operation.getIdempotencyKey(), output);
+    }
+
+    /**
+     * Reads an operation.
+     *
+     * @param input
+     *            the input
+     * @return the operation
+     * @throws IOException
+     *             if the operation cannot be read
+     */
+    public static Operation read(final DataInput input) throws IOException {
+        final String accountNumber = readString(input);
+        final byte operationType = input.readByte();
+        Instant operationDate = null;
+        if (input.readBoolean()) {
+            operationDate = Instant.ofEpochSecond(input.readLong(), input.readInt());
+        }
+        final String debit = readString(input);
+        final String credit = readString(input);
+        final String idempotencyKey = readString(input);
+        return new Operation(accountNumber, //
+                operationType < 0 ? null : OperationType.values()[operationType], //
+                operationDate, //
+                debit == null ? null : new BigDecimal(debit), //
+                credit == null ? null : new BigDecimal(credit), //
+                idempotencyKey);
+    }
+
+    /**
+     * Writes a string that may be {@code null}.
+     *
+     * @param value
+     *            the string
+     * @param output
+     *            the output
+     * @throws IOException
+     *             if the string cannot be written
+     */
+    private static void writeString(final String value, final DataOutput output) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string that may be {@code null}.
+     *
+     * @param input
+     *            the input
+     * @return the string
+     * @throws IOException
+     *             if the string cannot be read
+     */
+    private static String readString(final DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+}
@@ -0,0 +1,707 @@
+package fr.jpa.bankaccount.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Write-ahead log of the changes of the accounts.
+ * <p>
+ * The log starts with a header holding a magic number and the version of the record format: a log written in another
+ * format is rejected rather than misread. Each record is framed by its length and its CRC32 checksum. Records are appended by a single flusher thread that
+ * coalesces the pending records of concurrent writers into one write and one {@code fsync} (group commit), waiting at
+ * most the configured delay for more writers to join. The future returned by an append completes once the record is
+ * durable. Closing the log wakes the flusher, which writes the pending records and stops.
+ * <p>
+ * When the log is opened, a torn or corrupted tail left by a crash is truncated, and the valid records can then be
+ * replayed.
+ * <p>
+ * A checkpoint replaces the log by the current state of each account, so that the log does not grow without limit and
+ * the archived operations are not replayed. The checkpoint is written to a new file, made durable, then moved over the
+ * log, so that a crash leaves either the previous log or the checkpoint.
+ *
+ * @author jpauchet
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    /**
+     * Receives the replayed records.
+     */
+    public interface Replayer {
+
+        /**
+         * Replays operations created atomically.
+         *
+         * @param operations
+         *            the operations
+         */
+        void replayOperations(List<Operation> operations);
+
+        /**
+         * Replays the archiving of the oldest operations of an account.
+         *
+         * @param accountNumber
+         *            the account number
+         * @param count
+         *            the number of archived operations
+         * @param segmentSize
+         *            the size of the archive segment of the account once the operations were archived
+         */
+        void replayCompaction(String accountNumber, int count, long segmentSize);
+
+        /**
+         * Replays the removal of an account.
+         *
+         * @param accountNumber
+         *            the account number
+         */
+        void replayRemoval(String accountNumber);
+
+        /**
+         * Replays the state of an account at a checkpoint, replacing its previous state.
+         *
+         * @param accountNumber
+         *            the account number
+         * @param operations
+         *            the operations kept in memory
+         * @param archivedCount
+         *            the number of archived operations
+         * @param openingBalance
+         *            the balance of the archived operations
+         * @param archivedUntil
+         *            the date of the latest archived operation, or {@code null}
+         * @param segmentSize
+         *            the size of the archive segment of the account
+         */
+        void replayCheckpoint(String accountNumber, List<Operation> operations, int archivedCount, BigDecimal openingBalance, Instant archivedUntil,
+                long segmentSize);
+
+    }
+
+    /**
+     * Receives the state of the accounts written by a checkpoint.
+     */
+    public interface Checkpoint {
+
+        /**
+         * Writes the state of an account.
+         *
+         * @param accountNumber
+         *            the account number
+         * @param operations
+         *            the operations kept in memory
+         * @param archivedCount
+         *            the number of archived operations
+         * @param openingBalance
+         *            the balance of the archived operations
+         * @param archivedUntil
+         *            the date of the latest archived operation, or {@code null}
+         * @param segmentSize
+         *            the size of the archive segment of the account
+         */
+        void account(String accountNumber, List<Operation> operations, int archivedCount, BigDecimal openingBalance, Instant archivedUntil, long segmentSize);
+
+    }
+
+    /** Magic number starting the log. */
+    private static final int MAGIC = 0x4241574c;
+
+    /** Version of the record format. */
+    private static final byte VERSION = 1;
+
+    /** Size of the header of the log: magic number and version. */
+    private static final int FILE_HEADER_SIZE = 5;
+
+    /** Size of the header of a record: length and checksum. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Maximum size of a record. */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    /** Type of the records of created operations. */
+    private static final byte OPERATIONS = 0;
+
+    /** Type of the records of archived operations. */
+    private static final byte COMPACTION = 1;
+
+    /** Type of the records of removed accounts. */
+    private static final byte REMOVAL = 2;
+
+    /** Type of the records of the state of an account at a checkpoint. */
+    private static final byte CHECKPOINT = 3;
+
+    /** Queued when the log is closed, to wake the flusher. */
+    private static final PendingRecord CLOSING = new PendingRecord(null, false);
+
+    /** Log file. */
+    private final Path file;
+
+    /** Checkpoint file, moved over the log once durable. */
+    private final Path checkpointFile;
+
+    /** Log file channel, replaced by the flusher after a checkpoint. */
+    private FileChannel channel;
+
+    /** Maximum time waited for more records before a sync, in nanoseconds. */
+    private final long maxDelayNanos;
+
+    /** Maximum number of records per sync. */
+    private final int maxBatchSize;
+
+    /** Records waiting to be written. */
+    private final BlockingQueue<PendingRecord> pending;
+
+    /** Thread writing the records. */
+    private final Thread flusher;
+
+    /** Size of the valid records found when the log was opened. */
+    private final long recoveredSize;
+
+    /** Number of syncs. */
+    private final AtomicLong syncCount;
+
+    /** Whether the log is closed. */
+    private boolean closed;
+
+    /** Failure of the log, after which no record is accepted. */
+    private volatile IOException failure;
+
+    /**
+     * Constructor.
+     *
+     * @param file
+     *            the log file
+     * @param maxDelay
+     *            the maximum time waited for more records before a sync
+     * @param maxBatchSize
+     *            the maximum number of records per sync
+     */
+    public WriteAheadLog(final Path file, final Duration maxDelay, final int maxBatchSize) {
+        if (file == null) {
+            throw new IllegalArgumentException("The log file should be specified");
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("The maximum delay must not be negative");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.file = file;
+        this.checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.pending = new LinkedBlockingQueue<>();
+        this.syncCount = new AtomicLong();
+        try {
+            // drops a checkpoint that crashed before replacing the log
+            Files.deleteIfExists(this.checkpointFile);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                this.checkHeader();
+            } catch (final IllegalStateException e) {
+                this.channel.close();
+                throw e;
+            }
+            this.recoveredSize = this.scan(null);
+            if (this.channel.size() > this.recoveredSize) {
+                this.channel.truncate(this.recoveredSize);
+                this.channel.force(true);
+            }
+            this.channel.position(this.recoveredSize);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The write-ahead log cannot be opened", e);
+        }
+        this.flusher = new Thread(this::flush, "write-ahead-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Replays the records found when the log was opened.
+     *
+     * @param replayer
+     *            the receiver of the records
+     */
+    public void replay(final Replayer replayer) {
+        try {
+            this.scan(replayer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The write-ahead log cannot be replayed", e);
+        }
+    }
+
+    /**
+     * Appends operations created atomically.
+     *
+     * @param operations
+     *            the operations
+     * @return a future completed once the record is durable
+     */
+    public CompletableFuture<Void> appendOperations(final List<Operation> operations) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(OPERATIONS);
+            output.writeInt(operations.size());
+            for (final Operation operation : operations) {
+                OperationCodec.write(operation, output);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the archiving of the oldest operations of an account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param count
+     *            the number of archived operations
+     * @param segmentSize
+     *            the size of the archive segment of the account once the operations are archived
+     * @return a future completed once the record is durable
+     */
+    public CompletableFuture<Void> appendCompaction(final String accountNumber, final int count, final long segmentSize) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(COMPACTION);
+            output.writeUTF(accountNumber);
+            output.writeInt(count);
+            output.writeLong(segmentSize);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the removal of an account.
+     *
+     * @param accountNumber
+     *            the account number
+     * @return a future completed once the record is durable
+     */
+    public CompletableFuture<Void> appendRemoval(final String accountNumber) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(REMOVAL);
+            output.writeUTF(accountNumber);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.append(bytes.toByteArray());
+    }
+
+    /**
+     * Replaces the log by the state of the accounts. No record must be appended until the returned future completes,
+     * so that the state of the accounts follows all the previous records.
+     *
+     * @param writer
+     *            the writer of the state of the accounts
+     * @return a future completed once the checkpoint has replaced the log
+     */
+    public CompletableFuture<Void> checkpoint(final Consumer<Checkpoint> writer) {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        writer.accept((accountNumber, operations, archivedCount, openingBalance, archivedUntil, segmentSize) -> {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                output.writeByte(CHECKPOINT);
+                output.writeUTF(accountNumber);
+                output.writeInt(operations.size());
+                for (final Operation operation : operations) {
+                    OperationCodec.write(operation, output);
+                }
+                output.writeInt(archivedCount);
+                output.writeUTF(openingBalance.toString());
+                output.writeBoolean(archivedUntil != null);
+                if (archivedUntil != null) {
+                    output.writeLong(archivedUntil.getEpochSecond());
+                    output.writeInt(archivedUntil.getNano());
+                }
+                output.writeLong(segmentSize);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            final ByteBuffer record = frame(bytes.toByteArray());
+            records.write(record.array(), 0, record.limit());
+        });
+        return this.enqueue(new PendingRecord(ByteBuffer.wrap(records.toByteArray()), true));
+    }
+
+    /**
+     * Gets the number of syncs performed since the log was opened.
+     *
+     * @return the number of syncs
+     */
+    public long getSyncCount() {
+        return this.syncCount.get();
+    }
+
+    /**
+     * Writes the pending records and closes the log.
+     */
+    @Override
+    public void close() {
+        synchronized (this.pending) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.pending.add(CLOSING);
+        }
+        try {
+            this.flusher.join();
+            this.channel.close();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("The write-ahead log cannot be closed", e);
+        }
+    }
+
+    /**
+     * Frames a record and queues it for the flusher.
+     *
+     * @param payload
+     *            the content of the record
+     * @return a future completed once the record is durable
+     */
+    private CompletableFuture<Void> append(final byte[] payload) {
+        return this.enqueue(new PendingRecord(frame(payload), false));
+    }
+
+    /**
+     * Queues a record for the flusher.
+     *
+     * @param pendingRecord
+     *            the record
+     * @return a future completed once the record is durable
+     */
+    private CompletableFuture<Void> enqueue(final PendingRecord pendingRecord) {
+        synchronized (this.pending) {
+            if (this.closed) {
+                throw new IllegalStateException("The write-ahead log is closed");
+            }
+            if (this.failure != null) {
+                throw new UncheckedIOException("The write-ahead log failed", this.failure);
+            }
+            this.pending.add(pendingRecord);
+        }
+        return pendingRecord.durable;
+    }
+
+    /**
+     * Frames a record with its length and its checksum.
+     *
+     * @param payload
+     *            the content of the record
+     * @return the framed record
+     * @throws IllegalArgumentException
+     *             if the record is larger than the records read back from the log
+     */
+    private static ByteBuffer frame(final byte[] payload) {
+        if (payload.length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("The record of " + payload.length + " bytes is larger than " + MAX_RECORD_SIZE + " bytes");
+        }
+        final CRC32 checksum = new CRC32();
+        checksum.update(payload, 0, payload.length);
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+        return record;
+    }
+
+    /**
+     * Writes and syncs the pending records by batches, and the checkpoints, until the log is closed.
+     */
+    private void flush() {
+        final List<PendingRecord> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            PendingRecord next = null;
+            try {
+                next = this.pending.take();
+                final long deadline = System.nanoTime() + this.maxDelayNanos;
+                while (next != null && next != CLOSING && !next.checkpoint) {
+                    batch.add(next);
+                    if (batch.size() == this.maxBatchSize) {
+                        break;
+                    }
+                    next = this.pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                closing = next == CLOSING;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (!batch.isEmpty()) {
+                    this.write(batch);
+                    batch.clear();
+                }
+            }
+            if (next != null && next.checkpoint) {
+                this.rotate(next);
+            }
+        }
+    }
+
+    /**
+     * Writes and syncs a batch of records, then completes their futures.
+     *
+     * @param batch
+     *            the records
+     */
+    private void write(final List<PendingRecord> batch) {
+        try {
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            final ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = batch.get(i).record;
+            }
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                this.channel.write(buffers);
+            }
+            this.channel.force(false);
+            this.syncCount.incrementAndGet();
+            for (final PendingRecord record : batch) {
+                record.durable.complete(null);
+            }
+        } catch (final IOException e) {
+            this.failure = e;
+            for (final PendingRecord record : batch) {
+                record.durable.completeExceptionally(new UncheckedIOException("The write-ahead log failed", e));
+            }
+        }
+    }
+
+    /**
+     * Writes a checkpoint to a new file, makes it durable, then moves it over the log and appends the next records to
+     * it.
+     *
+     * @param checkpoint
+     *            the records of the checkpoint
+     */
+    private void rotate(final PendingRecord checkpoint) {
+        try {
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            try (FileChannel output = FileChannel.open(this.checkpointFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                final ByteBuffer[] buffers = { header(), checkpoint.record };
+                while (buffers[1].hasRemaining()) {
+                    output.write(buffers);
+                }
+                output.force(true);
+            }
+        } catch (final IOException e) {
+            // the log is left as it was
+            checkpoint.durable.completeExceptionally(new UncheckedIOException("The checkpoint cannot be written", e));
+            return;
+        }
+        try {
+            Files.move(this.checkpointFile, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(this.file);
+            final FileChannel previous = this.channel;
+            this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.channel.position(this.channel.size());
+            previous.close();
+            this.syncCount.incrementAndGet();
+            checkpoint.durable.complete(null);
+        } catch (final IOException e) {
+            this.failure = e;
+            checkpoint.durable.completeExceptionally(new UncheckedIOException("The write-ahead log failed", e));
+        }
+    }
+
+    /**
+     * Syncs the directory of a file, so that the file moved into it is durable.
+     *
+     * @param file
+     *            the file
+     */
+    private static void syncDirectory(final Path file) {
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (final IOException e) {
+            // some platforms cannot open a directory, their moves being durable once done
+        }
+    }
+
+    /**
+     * Builds the header of the log.
+     *
+     * @return the header
+     */
+    private static ByteBuffer header() {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).flip();
+        return header;
+    }
+
+    /**
+     * Writes the header of a new log, or checks the header of an existing one. A header torn by a crash during the
+     * creation of the log is written again.
+     *
+     * @throws IOException
+     *             if the log cannot be read or written
+     */
+    private void checkHeader() throws IOException {
+        final ByteBuffer expected = header();
+        final ByteBuffer actual = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        this.channel.read(actual, 0);
+        actual.flip();
+        if (actual.remaining() < FILE_HEADER_SIZE && actual.equals(expected.duplicate().limit(actual.remaining()))) {
+            this.channel.truncate(0);
+            this.channel.write(expected, 0);
+            this.channel.force(true);
+            return;
+        }
+        if (actual.remaining() < FILE_HEADER_SIZE || actual.getInt() != MAGIC) {
+            throw new IllegalStateException("The file " + this.file + " is not a write-ahead log of a known format");
+        }
+        final byte version = actual.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("The version " + version + " of the write-ahead log " + this.file + " is not supported");
+        }
+    }
+
+    /**
+     * Reads the valid records from the start of the log.
+     *
+     * @param replayer
+     *            the receiver of the records, or {@code null} to only validate them
+     * @return the size of the valid records
+     * @throws IOException
+     *             if the log cannot be read
+     */
+    private long scan(final Replayer replayer) throws IOException {
+        long valid = FILE_HEADER_SIZE;
+        final long limit = replayer == null ? this.channel.size() : this.recoveredSize;
+        try (InputStream file = Files.newInputStream(this.file); DataInputStream input = new DataInputStream(new BufferedInputStream(file))) {
+            input.readFully(new byte[FILE_HEADER_SIZE]);
+            while (valid + HEADER_SIZE <= limit) {
+                final int length = input.readInt();
+                final int expected = input.readInt();
+                if (length < 0 || length > MAX_RECORD_SIZE || valid + HEADER_SIZE + length > limit) {
+                    break;
+                }
+                final byte[] payload = new byte[length];
+                try {
+                    input.readFully(payload);
+                } catch (final EOFException e) {
+                    break;
+                }
+                final CRC32 checksum = new CRC32();
+                checksum.update(payload, 0, length);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                if (replayer != null) {
+                    this.replay(payload, replayer);
+                }
+                valid += HEADER_SIZE + length;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Replays a record.
+     *
+     * @param payload
+     *            the content of the record
+     * @param replayer
+     *            the receiver of the record
+     * @throws IOException
+     *             if the record cannot be decoded
+     */
+    private void replay(final byte[] payload, final Replayer replayer) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte type = input.readByte();
+        if (type == OPERATIONS) {
+            final int count = input.readInt();
+            final List<Operation> operations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                operations.add(OperationCodec.read(input));
+            }
+            replayer.replayOperations(operations);
+        } else if (type == COMPACTION) {
+            replayer.replayCompaction(input.readUTF(), input.readInt(), input.readLong());
+        } else if (type == REMOVAL) {
+            replayer.replayRemoval(input.readUTF());
+        } else if (type == CHECKPOINT) {
+            final String accountNumber = input.readUTF();
+            final int count = input.readInt();
+            final List<Operation> operations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                operations.add(OperationCodec.read(input));
+            }
+            final int archivedCount = input.readInt();
+            final BigDecimal openingBalance = new BigDecimal(input.readUTF());
+            final Instant archivedUntil = input.readBoolean() ? Instant.ofEpochSecond(input.readLong(), input.readInt()) : null;
+            replayer.replayCheckpoint(accountNumber, operations, archivedCount, openingBalance, archivedUntil, input.readLong());
+        } else {
+            throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Record waiting to be written.
+     */
+    private static final class PendingRecord {
+
+        /** Framed record. */
+        private final ByteBuffer record;
+
+        /** Whether the record is a checkpoint replacing the log. */
+        private final boolean checkpoint;
+
+        /** Completed once the record is durable. */
+        private final CompletableFuture<Void> durable;
+
+        /**
+         * Constructor.
+         *
+         * @param record
+         *            the framed record
+         * @param checkpoint
+         *            whether the record is a checkpoint replacing the log
+         */
+        private PendingRecord(final ByteBuffer record, final boolean checkpoint) {
+            this.record = record;
+            this.checkpoint = checkpoint;
+            this.durable = new CompletableFuture<>();
+        }
+
+    }
+
+}
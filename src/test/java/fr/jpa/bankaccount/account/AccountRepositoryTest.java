@@ -2,22 +2,38 @@ package fr.jpa.bankaccount.account;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import fr.jpa.bankaccount.bean.BalanceSummary;
 import fr.jpa.bankaccount.bean.Operation;
+import fr.jpa.bankaccount.feed.OperationFeed;
+import fr.jpa.bankaccount.feed.OverflowPolicy;
+import fr.jpa.bankaccount.feed.Subscription;
+import fr.jpa.bankaccount.storage.ArchivePolicy;
+import fr.jpa.bankaccount.storage.OperationArchive;
+import fr.jpa.bankaccount.storage.WriteAheadLog;
 
 /**
  * Tests {@link AccountRepository}.
@@ -27,6 +43,13 @@ import fr.jpa.bankaccount.bean.Operation;
  */
 public class AccountRepositoryTest {
 
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Bank accounts and their operations. */
+    private Map<String, List<Operation>> accounts;
+
     /** Stockage des comptes bancaires. */
     private AccountRepository accountRepository;
 
@@ -35,20 +58,29 @@ public class AccountRepositoryTest {
      */
     @Before
     public void setUp() throws Exception {
-        final Map<String, List<Operation>> accounts = new HashMap<>();
-        accounts.put("12345", //
+        this.accounts = new HashMap<>();
+        this.accounts.put("12345", //
                 Arrays.asList( //
                         new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("12.50")),
                         new Operation("12345", OperationType.WITHDRAWAL, Instant.parse("2018-03-14T00:00:00.00Z"), new BigDecimal("6.00"), BigDecimal.ZERO),
                         new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-03-13T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("50.75")) //
                 ) //
         );
-        accounts.put("424242", //
+        this.accounts.put("424242", //
                 Arrays.asList( //
                         new Operation("424242", OperationType.DEPOSIT, Instant.parse("2018-03-09T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("100.00")) //
                 ) //
         );
-        this.accountRepository = new AccountRepository(accounts);
+        this.accountRepository = new AccountRepository(this.accounts);
+    }
+
+    /**
+     * Builds a storage of the same accounts, archiving the cold operations.
+     *
+     * @return the storage
+     */
+    private AccountRepository archivedRepository() {
+        return new AccountRepository(this.accounts, null, new OperationArchive(this.folder.getRoot().toPath()));
     }
 
     /**
@@ -168,4 +200,614 @@ public class AccountRepositoryTest {
         assertThat(balance, equalTo(BigDecimal.ZERO));
     }
 
+    /**
+     * Tests {@link AccountRepository#createAll(List)}.
+     */
+    @Test
+    public void testCreateAll() {
+        // call
+        this.accountRepository.createAll(Arrays.asList( //
+                new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-15T00:00:00.00Z"), new BigDecimal("20.00"), BigDecimal.ZERO), //
+                new Operation("78901", OperationType.DEPOSIT, Instant.parse("2018-03-15T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("20.00")) //
+        ));
+
+        // check
+        assertThat(this.accountRepository.list("67890"), hasSize(1));
+        assertThat(this.accountRepository.list("78901"), hasSize(1));
+        assertThat(this.accountRepository.calculateBalance("67890"), equalTo(new BigDecimal("-20.00")));
+        assertThat(this.accountRepository.calculateBalance("78901"), equalTo(new BigDecimal("20.00")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#createAll(List)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateAllWithoutAccount() {
+        // call
+        this.accountRepository.createAll(Arrays.asList( //
+                new Operation(null, OperationType.DEPOSIT, Instant.parse("2018-03-15T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("20.00")) //
+        ));
+    }
+
+    /**
+     * Tests {@link AccountRepository#create(Operation)} and {@link AccountRepository#createAll(List)} with an operation
+     * feed.
+     */
+    @Test
+    public void testCreatePublishes() {
+        // prepare
+        final OperationFeed feed = new OperationFeed(16, OverflowPolicy.BLOCK);
+        final Subscription subscription = feed.subscribe();
+        final AccountRepository repository = new AccountRepository(feed);
+        final Operation deposit = new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-14T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("42.05"));
+        final Operation withdrawal = new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-15T00:00:00.00Z"), new BigDecimal("20.00"), BigDecimal.ZERO);
+        final Operation transferred = new Operation("78901", OperationType.DEPOSIT, Instant.parse("2018-03-15T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("20.00"));
+
+        // call
+        repository.create(deposit);
+        repository.createAll(Arrays.asList(withdrawal, transferred));
+
+        // check
+        assertThat(subscription.poll(10), contains(deposit, withdrawal, transferred));
+    }
+
+    /**
+     * Tests {@link AccountRepository#compact(String, ArchivePolicy, Instant)} keeping the latest operations.
+     */
+    @Test
+    public void testCompactKeepLatest() {
+        // prepare
+        final AccountRepository accountRepository = this.archivedRepository();
+
+        // call
+        final int archived = accountRepository.compact("12345", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-20T00:00:00.00Z"));
+
+        // check
+        assertThat(archived, equalTo(2));
+        final List<Operation> operations = accountRepository.list("12345");
+        assertThat(operations, hasSize(1));
+        assertThat(operations.get(0), hasProperty("operationDate", equalTo(Instant.parse("2018-03-14T00:00:00.00Z"))));
+        assertThat(accountRepository.getOpeningBalance("12345"), equalTo(new BigDecimal("63.25")));
+        assertThat(accountRepository.calculateBalance("12345"), equalTo(new BigDecimal("57.25")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#compactAll(ArchivePolicy, Instant)} archiving the old operations.
+     */
+    @Test
+    public void testCompactAllOlderThan() {
+        // prepare
+        final AccountRepository accountRepository = this.archivedRepository();
+
+        // call
+        final int archived = accountRepository.compactAll(ArchivePolicy.olderThan(Duration.ofDays(7)), Instant.parse("2018-03-20T12:00:00.00Z"));
+
+        // check
+        assertThat(archived, equalTo(3));
+        assertThat(accountRepository.list("12345"), hasSize(1));
+        assertThat(accountRepository.list("424242"), hasSize(0));
+        assertThat(accountRepository.calculateBalance("12345"), equalTo(new BigDecimal("57.25")));
+        assertThat(accountRepository.calculateBalance("424242"), equalTo(new BigDecimal("100.00")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#list(String, Instant, Instant)} over archived and recent operations.
+     */
+    @Test
+    public void testListPeriod() {
+        // prepare
+        final AccountRepository accountRepository = this.archivedRepository();
+        accountRepository.compact("12345", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-20T00:00:00.00Z"));
+
+        // call
+        final List<Operation> all = accountRepository.list("12345", null, null);
+        final List<Operation> recent = accountRepository.list("12345", Instant.parse("2018-03-14T00:00:00.00Z"), null);
+        final List<Operation> old = accountRepository.list("12345", Instant.parse("2018-03-12T00:00:00.00Z"), Instant.parse("2018-03-13T00:00:00.00Z"));
+
+        // check
+        assertThat(all, hasSize(3));
+        assertThat(all.get(0), hasProperty("operationDate", equalTo(Instant.parse("2018-03-14T00:00:00.00Z"))));
+        assertThat(all.get(2), hasProperty("operationDate", equalTo(Instant.parse("2018-03-12T00:00:00.00Z"))));
+        assertThat(recent, hasSize(1));
+        assertThat(old, hasSize(1));
+        assertThat(old.get(0), hasProperty("credit", equalTo(new BigDecimal("12.50"))));
+    }
+
+    /**
+     * Tests the recovery of the accounts from the {@link WriteAheadLog}.
+     */
+    @Test
+    public void testRecoveryFromWriteAheadLog() {
+        // prepare
+        final Path logFile = this.folder.getRoot().toPath().resolve("accounts.log");
+        final OperationArchive archive = new OperationArchive(this.folder.getRoot().toPath().resolve("archive"));
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            final AccountRepository repository = new AccountRepository(null, archive, log);
+            repository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("100.00")));
+            repository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-13T00:00:00.00Z"), new BigDecimal("10.00"), BigDecimal.ZERO));
+            repository.compact("67890", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-14T00:00:00.00Z"));
+            repository.createAll(Arrays.asList( //
+                    new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-14T00:00:00.00Z"), new BigDecimal("25.00"), BigDecimal.ZERO), //
+                    new Operation("78901", OperationType.DEPOSIT, Instant.parse("2018-03-14T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("25.00")) //
+            ));
+        }
+
+        // call
+        final AccountRepository recovered;
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            recovered = new AccountRepository(null, archive, log);
+        }
+
+        // check
+        assertThat(recovered.calculateBalance("67890"), equalTo(new BigDecimal("65.00")));
+        assertThat(recovered.calculateBalance("78901"), equalTo(new BigDecimal("25.00")));
+        assertThat(recovered.getOpeningBalance("67890"), equalTo(new BigDecimal("100.00")));
+        assertThat(recovered.list("67890"), hasSize(2));
+        assertThat(recovered.list("67890", null, null), hasSize(3));
+    }
+
+    /**
+     * Tests {@link AccountRepository#create(Operation, WithdrawalRules)} with an overdraft floor.
+     */
+    @Test
+    public void testCreateOverdraftFloor() {
+        // prepare
+        final WithdrawalRules rules = new WithdrawalRules(null, null, new BigDecimal("-50.00"));
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-15T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("57.25")), rules);
+        this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-15T00:01:00.00Z"), new BigDecimal("107.25"), BigDecimal.ZERO), rules);
+
+        // call
+        WithdrawalRejectedException rejected = null;
+        try {
+            this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-15T00:02:00.00Z"), new BigDecimal("0.01"), BigDecimal.ZERO), rules);
+        } catch (final WithdrawalRejectedException e) {
+            rejected = e;
+        }
+
+        // check
+        assertThat(rejected, notNullValue());
+        assertThat(this.accountRepository.calculateBalance("67890"), equalTo(new BigDecimal("-50.00")));
+        assertThat(this.accountRepository.list("67890"), hasSize(2));
+    }
+
+    /**
+     * Tests {@link AccountRepository#create(Operation, WithdrawalRules)} with a maximum amount per day.
+     */
+    @Test
+    public void testCreateMaxAmountPerDay() {
+        // prepare
+        final WithdrawalRules rules = new WithdrawalRules(new BigDecimal("100.00"), null, null);
+        final Instant start = Instant.parse("2018-03-15T08:00:00.00Z");
+        this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start, new BigDecimal("60.00"), BigDecimal.ZERO), rules);
+        this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start.plusSeconds(3600), new BigDecimal("40.00"), BigDecimal.ZERO), rules);
+
+        // call
+        boolean rejected = false;
+        try {
+            this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start.plusSeconds(7200), new BigDecimal("0.01"), BigDecimal.ZERO), rules);
+        } catch (final WithdrawalRejectedException e) {
+            rejected = true;
+        }
+        this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start.plus(Duration.ofDays(1)), new BigDecimal("60.00"), BigDecimal.ZERO), rules);
+
+        // check
+        assertThat(rejected, equalTo(true));
+        assertThat(this.accountRepository.calculateBalance("67890"), equalTo(new BigDecimal("-160.00")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#createAll(List, WithdrawalRules)} with a maximum count per hour: the rejected
+     * transfer creates no operation.
+     */
+    @Test
+    public void testCreateAllMaxCountPerHour() {
+        // prepare
+        final WithdrawalRules rules = new WithdrawalRules(null, 2, null);
+        final Instant start = Instant.parse("2018-03-15T08:00:00.00Z");
+        for (int i = 0; i < 2; i++) {
+            this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start.plusSeconds(i), new BigDecimal("1.00"), BigDecimal.ZERO), rules);
+        }
+
+        // call
+        boolean rejected = false;
+        try {
+            this.accountRepository.createAll(Arrays.asList( //
+                    new Operation("67890", OperationType.WITHDRAWAL, start.plusSeconds(60), new BigDecimal("1.00"), BigDecimal.ZERO), //
+                    new Operation("78901", OperationType.DEPOSIT, start.plusSeconds(60), BigDecimal.ZERO, new BigDecimal("1.00")) //
+            ), rules);
+        } catch (final WithdrawalRejectedException e) {
+            rejected = true;
+        }
+
+        // check
+        assertThat(rejected, equalTo(true));
+        assertThat(this.accountRepository.list("67890"), hasSize(2));
+        assertThat(this.accountRepository.list("78901"), hasSize(0));
+    }
+
+    /**
+     * Tests {@link AccountRepository#create(Operation)} and {@link AccountRepository#createAll(List)} with operations
+     * dated before the latest operation of their account: they are dated after it, in the order of creation.
+     */
+    @Test
+    public void testCreateBeforeLatest() {
+        // prepare
+        final Instant latest = Instant.parse("2018-03-20T00:00:00.00Z");
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, latest, BigDecimal.ZERO, new BigDecimal("1.00")));
+
+        // call
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, latest.minusSeconds(1), BigDecimal.ZERO, new BigDecimal("2.00")));
+        this.accountRepository.createAll(Arrays.asList( //
+                new Operation("67890", OperationType.WITHDRAWAL, latest, new BigDecimal("3.00"), BigDecimal.ZERO), //
+                new Operation("67890", OperationType.DEPOSIT, latest, BigDecimal.ZERO, new BigDecimal("4.00")) //
+        ));
+
+        // check
+        final List<Operation> operations = this.accountRepository.list("67890", latest, null);
+        assertThat(operations, contains( //
+                allOf(hasProperty("credit", equalTo(new BigDecimal("4.00"))), hasProperty("operationDate", equalTo(latest.plusNanos(3)))), //
+                allOf(hasProperty("debit", equalTo(new BigDecimal("3.00"))), hasProperty("operationDate", equalTo(latest.plusNanos(2)))), //
+                allOf(hasProperty("credit", equalTo(new BigDecimal("2.00"))), hasProperty("operationDate", equalTo(latest.plusNanos(1)))), //
+                allOf(hasProperty("credit", equalTo(new BigDecimal("1.00"))), hasProperty("operationDate", equalTo(latest))) //
+        ));
+    }
+
+    /**
+     * Tests {@link WithdrawalRules#WithdrawalRules(BigDecimal, Integer, BigDecimal)} with a negative maximum count per
+     * hour.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithdrawalRulesNegativeMaxCountPerHour() {
+        // call
+        new WithdrawalRules(null, -1, null);
+    }
+
+    /**
+     * Tests {@link AccountRepository#remove(String)} then {@link AccountRepository#restore(List)}: the account moves
+     * with its balance.
+     */
+    @Test
+    public void testRemoveRestore() {
+        // prepare
+        final AccountRepository target = new AccountRepository();
+
+        // call
+        final List<Operation> operations = this.accountRepository.remove("12345");
+        target.restore(operations);
+
+        // check
+        assertThat(operations, hasSize(3));
+        assertThat(operations.get(0).getOperationDate(), equalTo(Instant.parse("2018-03-12T00:00:00.00Z")));
+        assertThat(this.accountRepository.getAccountNumbers().contains("12345"), equalTo(false));
+        assertThat(this.accountRepository.calculateBalance("12345"), equalTo(BigDecimal.ZERO));
+        assertThat(target.list("12345"), hasSize(3));
+        assertThat(target.calculateBalance("12345"), equalTo(new BigDecimal("57.25")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#export(String)}, {@link AccountRepository#restore(AccountExport)} then
+     * {@link AccountRepository#remove(String)} on an account with archived operations: the account moves with its
+     * archived operations and its opening balance, also after replaying the {@link WriteAheadLog}.
+     */
+    @Test
+    public void testExportRestoreArchived() {
+        // prepare
+        final AccountRepository accountRepository = this.archivedRepository();
+        accountRepository.compact("12345", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-15T00:00:00.00Z"));
+        final Path logFile = this.folder.getRoot().toPath().resolve("accounts.log");
+        final OperationArchive archive = new OperationArchive(this.folder.getRoot().toPath().resolve("target"));
+
+        // call
+        final AccountRepository target;
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            target = new AccountRepository(null, archive, log);
+            target.restore(accountRepository.export("12345"));
+            accountRepository.remove("12345");
+        }
+        final AccountRepository recovered;
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            recovered = new AccountRepository(null, archive, log);
+        }
+
+        // check
+        assertThat(accountRepository.getAccountNumbers().contains("12345"), equalTo(false));
+        assertThat(new OperationArchive(this.folder.getRoot().toPath()).size("12345"), equalTo(0L));
+        for (final AccountRepository repository : Arrays.asList(target, recovered)) {
+            assertThat(repository.getOpeningBalance("12345"), equalTo(new BigDecimal("63.25")));
+            assertThat(repository.calculateBalance("12345"), equalTo(new BigDecimal("57.25")));
+            assertThat(repository.list("12345"), hasSize(1));
+            assertThat(repository.list("12345", null, null), hasSize(3));
+        }
+    }
+
+    /**
+     * Tests {@link AccountRepository#restore(AccountExport)} of an account with archived operations without archive.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testRestoreArchivedWithoutArchive() {
+        // prepare
+        final AccountRepository accountRepository = this.archivedRepository();
+        accountRepository.compact("12345", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-15T00:00:00.00Z"));
+
+        // call
+        new AccountRepository().restore(accountRepository.export("12345"));
+    }
+
+    /**
+     * Tests {@link AccountRepository#summarize(String)}, the amounts being summed in minor units.
+     */
+    @Test
+    public void testSummarize() {
+        // call
+        final BalanceSummary summary = this.accountRepository.summarize("12345");
+
+        // check
+        assertThat(summary.getOperations(), equalTo(3));
+        assertThat(summary.getBalance(), equalTo(new BigDecimal("57.25")));
+        assertThat(summary.getTotal(OperationType.DEPOSIT), equalTo(new BigDecimal("63.25")));
+        assertThat(summary.getTotal(OperationType.WITHDRAWAL), equalTo(new BigDecimal("-6.00")));
+        assertThat(summary.getMinBalance(), equalTo(new BigDecimal("0.00")));
+        assertThat(summary.getMaxBalance(), equalTo(new BigDecimal("63.25")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#summarize(String)} after new operations and a compaction.
+     */
+    @Test
+    public void testSummarizeIncremental() {
+        // prepare
+        final AccountRepository accountRepository = this.archivedRepository();
+        accountRepository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("10.00")));
+        accountRepository.summarize("67890");
+        accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-13T00:00:00.00Z"), new BigDecimal("25.00"), BigDecimal.ZERO));
+        accountRepository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-14T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("5.50")));
+
+        // call
+        final BalanceSummary summary = accountRepository.summarize("67890");
+        accountRepository.compact("67890", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-15T00:00:00.00Z"));
+        final BalanceSummary compacted = accountRepository.summarize("67890");
+
+        // check
+        assertThat(summary.getOperations(), equalTo(3));
+        assertThat(summary.getBalance(), equalTo(new BigDecimal("-9.50")));
+        assertThat(summary.getMinBalance(), equalTo(new BigDecimal("-15.00")));
+        assertThat(summary.getMaxBalance(), equalTo(new BigDecimal("10.00")));
+        assertThat(compacted.getOperations(), equalTo(1));
+        assertThat(compacted.getBalance(), equalTo(new BigDecimal("-9.50")));
+        assertThat(compacted.getMinBalance(), equalTo(new BigDecimal("-15.00")));
+        assertThat(compacted.getMaxBalance(), equalTo(new BigDecimal("-9.50")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#summarize(String)} with an amount that cannot be expressed in minor units.
+     */
+    @Test
+    public void testSummarizeNotInMinorUnits() {
+        // prepare
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("10.005")));
+        this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-13T00:00:00.00Z"), new BigDecimal("0.005"), BigDecimal.ZERO));
+
+        // call
+        final BalanceSummary summary = this.accountRepository.summarize("67890");
+
+        // check
+        assertThat(summary.getBalance(), equalTo(new BigDecimal("10.000")));
+        assertThat(summary.getTotal(OperationType.DEPOSIT), equalTo(new BigDecimal("10.005")));
+        assertThat(summary.getMaxBalance(), equalTo(new BigDecimal("10.005")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#summarize(String)} with sums overflowing the minor units: the amounts have the
+     * same scale as when they are summed in minor units.
+     */
+    @Test
+    public void testSummarizeOverflow() {
+        // prepare
+        final BigDecimal amount = new BigDecimal("50000000000000000");
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, amount));
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-13T00:00:00.00Z"), BigDecimal.ZERO, amount));
+
+        // call
+        final BalanceSummary summary = this.accountRepository.summarize("67890");
+
+        // check
+        assertThat(summary.getBalance(), equalTo(new BigDecimal("100000000000000000.00")));
+        assertThat(summary.getTotal(OperationType.DEPOSIT), equalTo(new BigDecimal("100000000000000000.00")));
+        assertThat(summary.getTotal(OperationType.WITHDRAWAL), equalTo(new BigDecimal("0.00")));
+        assertThat(summary.getMinBalance(), equalTo(new BigDecimal("0.00")));
+        assertThat(summary.getMaxBalance(), equalTo(new BigDecimal("100000000000000000.00")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#createOnce(Operation, WithdrawalRules)}: a retried operation is ignored and
+     * answered with the result of the original one.
+     */
+    @Test
+    public void testCreateOnce() {
+        // prepare
+        final Instant date = Instant.parse("2018-03-14T00:00:00.00Z");
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, date, BigDecimal.ZERO, new BigDecimal("10.00")));
+
+        // call
+        final boolean first = this.accountRepository.createOnce(new Operation("67890", OperationType.WITHDRAWAL, date.plusSeconds(1), new BigDecimal("50.01"), BigDecimal.ZERO, "request-1"), null);
+        this.accountRepository.create(new Operation("67890", OperationType.DEPOSIT, date.plusSeconds(2), BigDecimal.ZERO, new BigDecimal("100.00")));
+        final boolean retried = this.accountRepository.createOnce(new Operation("67890", OperationType.WITHDRAWAL, date.plusSeconds(3), new BigDecimal("50.01"), BigDecimal.ZERO, "request-1"), null);
+        final boolean other = this.accountRepository.createOnce(new Operation("67890", OperationType.WITHDRAWAL, date.plusSeconds(4), new BigDecimal("50.01"), BigDecimal.ZERO, "request-2"), null);
+
+        // check
+        assertThat(first, equalTo(false));
+        assertThat(retried, equalTo(false));
+        assertThat(other, equalTo(true));
+        assertThat(this.accountRepository.list("67890"), hasSize(4));
+        assertThat(this.accountRepository.calculateBalance("67890"), equalTo(new BigDecimal("9.98")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#createOnce(Operation, WithdrawalRules)} once the idempotency key expired.
+     */
+    @Test
+    public void testCreateOnceAfterRetention() {
+        // prepare
+        final Instant date = Instant.parse("2018-03-14T00:00:00.00Z");
+        this.accountRepository.createOnce(new Operation("67890", OperationType.DEPOSIT, date, BigDecimal.ZERO, new BigDecimal("5.00"), "request-1"), null);
+
+        // call
+        this.accountRepository.createOnce(new Operation("67890", OperationType.DEPOSIT, date.plus(AccountRepository.DEDUPLICATION_RETENTION).plusSeconds(1), BigDecimal.ZERO,
+                new BigDecimal("5.00"), "request-1"), null);
+
+        // check
+        assertThat(this.accountRepository.list("67890"), hasSize(2));
+    }
+
+    /**
+     * Tests {@link AccountRepository#createOnce(Operation, WithdrawalRules)} retried after a recovery from the
+     * {@link WriteAheadLog} and after the account moved to another repository.
+     */
+    @Test
+    public void testCreateOnceAfterRecoveryAndRestore() {
+        // prepare
+        final Path logFile = this.folder.getRoot().toPath().resolve("accounts.log");
+        final Instant date = Instant.parse("2018-03-14T00:00:00.00Z");
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            new AccountRepository(null, null, log)
+                    .createOnce(new Operation("67890", OperationType.DEPOSIT, date, BigDecimal.ZERO, new BigDecimal("5.00"), "request-1"), null);
+        }
+        final AccountRepository target = new AccountRepository();
+
+        // call
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            final AccountRepository recovered = new AccountRepository(null, null, log);
+            recovered.createOnce(new Operation("67890", OperationType.DEPOSIT, date.plusSeconds(1), BigDecimal.ZERO, new BigDecimal("5.00"), "request-1"), null);
+            target.restore(recovered.remove("67890"));
+        }
+        target.createOnce(new Operation("67890", OperationType.DEPOSIT, date.plusSeconds(2), BigDecimal.ZERO, new BigDecimal("5.00"), "request-1"), null);
+
+        // check
+        assertThat(target.list("67890"), hasSize(1));
+        assertThat(target.calculateBalance("67890"), equalTo(new BigDecimal("5.00")));
+    }
+
+    /**
+     * Tests the recovery from the {@link WriteAheadLog} after a crash between the archiving of operations and the
+     * logging of the compaction: the operations are archived only once.
+     */
+    @Test
+    public void testRecoveryFromUnloggedCompaction() {
+        // prepare
+        final Path logFile = this.folder.getRoot().toPath().resolve("accounts.log");
+        final OperationArchive archive = new OperationArchive(this.folder.getRoot().toPath().resolve("archive"));
+        final Operation deposit = new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("100.00"));
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            final AccountRepository repository = new AccountRepository(null, archive, log);
+            repository.create(deposit);
+            repository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-13T00:00:00.00Z"), new BigDecimal("10.00"), BigDecimal.ZERO));
+            archive.append("67890", Collections.singletonList(deposit));
+        }
+
+        // call
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ofMillis(1), 16)) {
+            final AccountRepository recovered = new AccountRepository(null, archive, log);
+            recovered.compact("67890", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-14T00:00:00.00Z"));
+
+            // check
+            assertThat(recovered.list("67890", null, null), hasSize(2));
+            assertThat(archive.load("67890", null, null), hasSize(1));
+        }
+    }
+
+    /**
+     * Tests {@link AccountRepository#compactAll(ArchivePolicy, Instant)} with a {@link WriteAheadLog}: the log is
+     * replaced by a checkpoint, from which the accounts are recovered without their archived operations.
+     */
+    @Test
+    public void testCompactAllCheckpoint() throws IOException {
+        // prepare
+        final Path logFile = this.folder.getRoot().toPath().resolve("accounts.log");
+        final OperationArchive archive = new OperationArchive(this.folder.getRoot().toPath().resolve("archive"));
+        final Instant start = Instant.parse("2018-03-01T00:00:00.00Z");
+        final long logSize;
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ZERO, 16)) {
+            final AccountRepository repository = new AccountRepository(null, archive, log);
+            for (int i = 0; i < 50; i++) {
+                repository.create(new Operation("67890", OperationType.DEPOSIT, start.plus(Duration.ofHours(i)), BigDecimal.ZERO, new BigDecimal("2.00")));
+                repository.create(new Operation("78901", OperationType.DEPOSIT, start.plus(Duration.ofHours(i)), BigDecimal.ZERO, new BigDecimal("3.00")));
+            }
+            logSize = Files.size(logFile);
+
+            // call
+            repository.compactAll(ArchivePolicy.keepLatest(2), start.plus(Duration.ofDays(10)));
+            repository.create(new Operation("67890", OperationType.WITHDRAWAL, start.plus(Duration.ofDays(3)), new BigDecimal("10.00"), BigDecimal.ZERO));
+        }
+        final AccountRepository recovered;
+        try (WriteAheadLog log = new WriteAheadLog(logFile, Duration.ZERO, 16)) {
+            recovered = new AccountRepository(null, archive, log);
+        }
+
+        // check
+        assertThat(Files.size(logFile), lessThan(logSize / 4));
+        assertThat(recovered.calculateBalance("67890"), equalTo(new BigDecimal("90.00")));
+        assertThat(recovered.calculateBalance("78901"), equalTo(new BigDecimal("150.00")));
+        assertThat(recovered.getOpeningBalance("67890"), equalTo(new BigDecimal("96.00")));
+        assertThat(recovered.list("67890"), hasSize(3));
+        assertThat(recovered.list("78901"), hasSize(2));
+        assertThat(recovered.list("78901", null, null), hasSize(50));
+        assertThat(recovered.summarize("67890").getBalance(), equalTo(new BigDecimal("90.00")));
+    }
+
+    /**
+     * Tests {@link AccountRepository#compact(String, ArchivePolicy, Instant)} when the compaction cannot be logged:
+     * the archived operations are dropped from the archive.
+     */
+    @Test
+    public void testCompactLogFailure() {
+        // prepare
+        final OperationArchive archive = new OperationArchive(this.folder.getRoot().toPath().resolve("archive"));
+        final WriteAheadLog log = new WriteAheadLog(this.folder.getRoot().toPath().resolve("accounts.log"), Duration.ofMillis(1), 16);
+        final AccountRepository repository = new AccountRepository(null, archive, log);
+        repository.create(new Operation("67890", OperationType.DEPOSIT, Instant.parse("2018-03-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("100.00")));
+        repository.create(new Operation("67890", OperationType.WITHDRAWAL, Instant.parse("2018-03-13T00:00:00.00Z"), new BigDecimal("10.00"), BigDecimal.ZERO));
+        log.close();
+
+        // call
+        boolean failed = false;
+        try {
+            repository.compact("67890", ArchivePolicy.keepLatest(1), Instant.parse("2018-03-14T00:00:00.00Z"));
+        } catch (final IllegalStateException e) {
+            failed = true;
+        }
+
+        // check
+        assertThat(failed, equalTo(true));
+        assertThat(archive.size("67890"), equalTo(0L));
+        assertThat(repository.list("67890", null, null), hasSize(2));
+    }
+
+    /**
+     * Tests {@link AccountRepository#create(Operation, WithdrawalRules)} with a maximum amount per day and withdrawals
+     * too large for a {@code long} in minor units: they are rejected instead of wrapping around.
+     */
+    @Test
+    public void testCreateMaxAmountPerDayOverflow() {
+        // prepare
+        final WithdrawalRules rules = new WithdrawalRules(new BigDecimal("100.00"), null, null);
+        final Instant start = Instant.parse("2018-03-15T08:00:00.00Z");
+        this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start, new BigDecimal("92233720368547758.07"), BigDecimal.ZERO));
+
+        // call
+        int rejected = 0;
+        for (final String debit : new String[] { "1.00", "100000000000000000.00" }) {
+            try {
+                this.accountRepository.create(new Operation("78901", OperationType.WITHDRAWAL, start, new BigDecimal(debit), BigDecimal.ZERO), rules);
+                this.accountRepository.create(new Operation("67890", OperationType.WITHDRAWAL, start.plusSeconds(1), new BigDecimal(debit), BigDecimal.ZERO), rules);
+            } catch (final WithdrawalRejectedException e) {
+                rejected++;
+            }
+        }
+
+        // check
+        assertThat(rejected, equalTo(2));
+        assertThat(this.accountRepository.list("67890"), hasSize(1));
+        assertThat(this.accountRepository.list("78901"), hasSize(1));
+    }
+
 }
@@ -2,20 +2,29 @@ package fr.jpa.bankaccount.account;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -46,12 +55,23 @@ public class AccountServiceTest {
     @InjectMocks
     private AccountService accountService;
 
+    /** Mocks to release after each test. */
+    private AutoCloseable mocks;
+
     /**
      * Prepares the unit tests execution.
      */
     @Before
     public void setUp() throws Exception {
-        MockitoAnnotations.initMocks(this);
+        this.mocks = MockitoAnnotations.openMocks(this);
+    }
+
+    /**
+     * Releases the mocks.
+     */
+    @After
+    public void tearDown() throws Exception {
+        this.mocks.close();
     }
 
     /**
@@ -107,7 +127,7 @@ public class AccountServiceTest {
 
         // check
         final ArgumentCaptor<Operation> operation = ArgumentCaptor.forClass(Operation.class);
-        verify(this.accountRepository).create(operation.capture());
+        verify(this.accountRepository).create(operation.capture(), isNull());
         verify(this.accountRepository).calculateBalance(eq(accountNumber));
         assertThat(operation.getValue(),
                 allOf( //
@@ -137,7 +157,7 @@ public class AccountServiceTest {
 
         // check
         final ArgumentCaptor<Operation> operation = ArgumentCaptor.forClass(Operation.class);
-        verify(this.accountRepository).create(operation.capture());
+        verify(this.accountRepository).create(operation.capture(), isNull());
         verify(this.accountRepository).calculateBalance(eq(accountNumber));
         assertThat(operation.getValue(),
                 allOf( //
@@ -167,7 +187,7 @@ public class AccountServiceTest {
 
         // check
         final ArgumentCaptor<Operation> operation = ArgumentCaptor.forClass(Operation.class);
-        verify(this.accountRepository).create(operation.capture());
+        verify(this.accountRepository).create(operation.capture(), isNull());
         verify(this.accountRepository).calculateBalance(eq(accountNumber));
         assertThat(operation.getValue(),
                 allOf( //
@@ -190,6 +210,72 @@ public class AccountServiceTest {
         this.accountService.withdrawMoney("12345", new BigDecimal("-42.00"));
     }
 
+    /**
+     * Tests {@link AccountService#depositMoney(String, BigDecimal, String)}.
+     */
+    @Test
+    public void testDepositMoneyIdempotent() {
+        // prepare
+        final Instant date = Instant.parse("2018-03-14T00:00:00.00Z");
+        when(this.dateProvider.getDate()).thenReturn(date);
+
+        // call
+        this.accountService.depositMoney("12345", new BigDecimal("42.00"), "request-1");
+
+        // check
+        final ArgumentCaptor<Operation> operation = ArgumentCaptor.forClass(Operation.class);
+        verify(this.accountRepository).createOnce(operation.capture(), isNull());
+        verify(this.accountRepository, never()).create(any(Operation.class));
+        assertThat(operation.getValue(), allOf( //
+                hasProperty("operationType", equalTo(OperationType.DEPOSIT)), //
+                hasProperty("operationDate", equalTo(date)), //
+                hasProperty("idempotencyKey", equalTo("request-1")) //
+        ));
+    }
+
+    /**
+     * Tests {@link AccountService#withdrawMoney(String, BigDecimal, String)}: the result comes from the repository,
+     * which answers the retries.
+     */
+    @Test
+    public void testWithdrawMoneyIdempotent() {
+        // prepare
+        when(this.accountRepository.createOnce(any(Operation.class), isNull())).thenReturn(false);
+        when(this.dateProvider.getDate()).thenReturn(Instant.parse("2018-03-14T00:00:00.00Z"));
+
+        // call
+        final boolean actual = this.accountService.withdrawMoney("12345", new BigDecimal("50.01"), "request-1");
+
+        // check
+        final ArgumentCaptor<Operation> operation = ArgumentCaptor.forClass(Operation.class);
+        verify(this.accountRepository).createOnce(operation.capture(), isNull());
+        assertThat(operation.getValue(), allOf( //
+                hasProperty("operationType", equalTo(OperationType.WITHDRAWAL)), //
+                hasProperty("debit", equalTo(new BigDecimal("50.01"))), //
+                hasProperty("idempotencyKey", equalTo("request-1")) //
+        ));
+        assertThat(actual, equalTo(false));
+    }
+
+    /**
+     * Tests {@link AccountService#withdrawMoney(String, BigDecimal)} with withdrawal rules.
+     */
+    @Test
+    public void testWithdrawMoneyWithRules() {
+        // prepare
+        final WithdrawalRules rules = new WithdrawalRules(new BigDecimal("500.00"), 10, BigDecimal.ZERO);
+        final AccountService service = new AccountService(this.accountRepository, this.dateProvider, rules);
+        when(this.accountRepository.calculateBalance(any(String.class))).thenReturn(new BigDecimal("10.00"));
+        when(this.dateProvider.getDate()).thenReturn(Instant.parse("2018-03-14T00:00:00.00Z"));
+
+        // call
+        service.withdrawMoney("12345", new BigDecimal("5.00"));
+
+        // check
+        verify(this.accountRepository).create(any(Operation.class), eq(rules));
+        verify(this.accountRepository, never()).create(any(Operation.class));
+    }
+
     /**
      * Tests {@link AccountService#establishAccountStatement(String)}.
      */
@@ -197,18 +283,127 @@ public class AccountServiceTest {
     public void testEstablishAccountStatement() {
         // prepare
         final String accountNumber = "12345";
-        final Operation dummyOperation = new Operation(null, null, null, null, null);
-        when(this.accountRepository.list(any(String.class))).thenReturn(Arrays.asList(dummyOperation, dummyOperation, dummyOperation));
-        when(this.accountRepository.calculateBalance(any(String.class))).thenReturn(new BigDecimal("42.00"));
+        final Instant date = Instant.parse("2018-03-14T00:00:00.00Z");
+        final Operation[] operations = { //
+                new Operation(accountNumber, OperationType.DEPOSIT, date, BigDecimal.ZERO, new BigDecimal("1.00")), //
+                new Operation(accountNumber, OperationType.DEPOSIT, date.plusSeconds(2), BigDecimal.ZERO, new BigDecimal("0.50")), //
+                new Operation(accountNumber, OperationType.DEPOSIT, date.plusSeconds(1), BigDecimal.ZERO, new BigDecimal("0.50")) //
+        };
+        when(this.accountRepository.snapshot(any(String.class)))
+                .thenReturn(new AccountSnapshot(accountNumber, operations, new BigDecimal("40.00"), 2, 64L, new BigDecimal("42.00"), 5L));
 
         // call
         final AccountStatement actual = this.accountService.establishAccountStatement(accountNumber);
 
         // check
-        verify(this.accountRepository).list(eq(accountNumber));
-        verify(this.accountRepository).calculateBalance(eq(accountNumber));
+        verify(this.accountRepository).snapshot(eq(accountNumber));
         assertThat(actual.getOperations(), hasSize(3));
+        assertThat(actual.getOperations().get(0).getOperationDate(), equalTo(date.plusSeconds(2)));
+        assertThat(actual.getOperations().get(2).getOperationDate(), equalTo(date));
+        assertThat(actual.getOpeningBalance(), equalTo(new BigDecimal("40.00")));
         assertThat(actual.getBalance(), equalTo(new BigDecimal("42.00")));
     }
 
+    /**
+     * Tests {@link AccountService#transfer(String, String, BigDecimal)}.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTransfer() {
+        // prepare
+        when(this.accountRepository.calculateBalance(any(String.class))).thenReturn(new BigDecimal("8.00"));
+        final Instant date = Instant.parse("2018-03-14T00:00:00.00Z");
+        when(this.dateProvider.getDate()).thenReturn(date);
+
+        // call
+        final boolean actual = this.accountService.transfer("12345", "67890", new BigDecimal("42.00"));
+
+        // check
+        final ArgumentCaptor<List<Operation>> operations = ArgumentCaptor.forClass(List.class);
+        verify(this.accountRepository).createAll(operations.capture(), isNull());
+        verify(this.accountRepository, never()).create(any(Operation.class));
+        verify(this.accountRepository).calculateBalance(eq("12345"));
+        assertThat(operations.getValue(), contains( //
+                allOf( //
+                        hasProperty("accountNumber", equalTo("12345")), //
+                        hasProperty("operationType", equalTo(OperationType.WITHDRAWAL)), //
+                        hasProperty("operationDate", equalTo(date)), //
+                        hasProperty("debit", equalTo(new BigDecimal("42.00"))) //
+                ), //
+                allOf( //
+                        hasProperty("accountNumber", equalTo("67890")), //
+                        hasProperty("operationType", equalTo(OperationType.DEPOSIT)), //
+                        hasProperty("operationDate", equalTo(date)), //
+                        hasProperty("credit", equalTo(new BigDecimal("42.00"))) //
+                ) //
+        ));
+        assertThat(actual, equalTo(true));
+    }
+
+    /**
+     * Tests {@link AccountService#transfer(String, String, BigDecimal)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransferSameAccount() {
+        // call
+        this.accountService.transfer("12345", "12345", new BigDecimal("42.00"));
+    }
+
+    /**
+     * Tests {@link AccountService#transfer(String, String, BigDecimal)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransferWrongAmount() {
+        // call
+        this.accountService.transfer("12345", "67890", BigDecimal.ZERO);
+    }
+
+    /**
+     * Tests {@link AccountService#transfer(String, String, BigDecimal)} with concurrent transfers across overlapping
+     * accounts: no transfer deadlocks and the total amount of money is preserved.
+     */
+    @Test(timeout = 30000)
+    public void testTransferConcurrent() throws Exception {
+        // prepare
+        final AccountService service = new AccountService(new AccountRepository(), Instant::now);
+        final String[] accountNumbers = { "1", "2", "3", "4", "5" };
+        for (final String accountNumber : accountNumbers) {
+            service.depositMoney(accountNumber, new BigDecimal("1000.00"));
+        }
+        final int threads = 8;
+        final int transfersPerThread = 2000;
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            tasks.add(() -> {
+                for (int i = 0; i < transfersPerThread; i++) {
+                    final int from = random.nextInt(accountNumbers.length);
+                    final int to = (from + 1 + random.nextInt(accountNumbers.length - 1)) % accountNumbers.length;
+                    service.transfer(accountNumbers[from], accountNumbers[to], new BigDecimal(random.nextInt(10000)).movePointLeft(2).add(new BigDecimal("0.01")));
+                }
+                return null;
+            });
+        }
+
+        // call
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // check
+        BigDecimal total = BigDecimal.ZERO;
+        int operations = 0;
+        for (final String accountNumber : accountNumbers) {
+            total = total.add(service.getAccountRepository().calculateBalance(accountNumber));
+            operations += service.getAccountRepository().list(accountNumber).size();
+        }
+        assertThat(total, equalTo(new BigDecimal("5000.00")));
+        assertThat(operations, equalTo(accountNumbers.length + 2 * threads * transfersPerThread));
+    }
+
 }
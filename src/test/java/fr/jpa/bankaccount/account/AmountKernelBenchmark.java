@@ -0,0 +1,133 @@
+package fr.jpa.bankaccount.account;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import fr.jpa.bankaccount.bean.BalanceSummary;
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Compares the summary of an account computed with {@link BigDecimal} arithmetic to the one computed by the
+ * {@link AmountKernel} over amounts in minor units.
+ * <p>
+ * Run with {@code mvn test-compile} then the {@link #main(String[])} method on the test classpath.
+ *
+ * @author jpauchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmountKernelBenchmark {
+
+    /** Account number. */
+    private static final String ACCOUNT_NUMBER = "12345";
+
+    /** Number of operations. */
+    @Param({ "1000", "100000" })
+    private int operations;
+
+    /** Operations, from the oldest to the latest. */
+    private List<Operation> chronological;
+
+    /** Net amounts, in minor units. */
+    private long[] amounts;
+
+    /** Operation types, by ordinal. */
+    private int[] types;
+
+    /** Repository holding the operations, already summarized once. */
+    private AccountRepository accountRepository;
+
+    /**
+     * Prepares random operations.
+     */
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final Instant start = Instant.parse("2018-03-14T00:00:00.00Z");
+        this.chronological = new ArrayList<>(this.operations);
+        this.amounts = new long[this.operations];
+        this.types = new int[this.operations];
+        for (int i = 0; i < this.operations; i++) {
+            final BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(100000), Operation.MINOR_UNITS_SCALE);
+            final Operation operation = random.nextBoolean()
+                    ? new Operation(ACCOUNT_NUMBER, OperationType.DEPOSIT, start.plusSeconds(i), BigDecimal.ZERO, amount)
+                    : new Operation(ACCOUNT_NUMBER, OperationType.WITHDRAWAL, start.plusSeconds(i), amount, BigDecimal.ZERO);
+            this.chronological.add(operation);
+            this.amounts[i] = operation.getNetMinorUnits();
+            this.types[i] = operation.getOperationType().ordinal();
+        }
+        this.accountRepository = new AccountRepository(Collections.singletonMap(ACCOUNT_NUMBER, new ArrayList<>(this.chronological)));
+        this.accountRepository.summarize(ACCOUNT_NUMBER);
+    }
+
+    /**
+     * Summary with {@link BigDecimal} arithmetic.
+     *
+     * @return the summary
+     */
+    @Benchmark
+    public BalanceSummary bigDecimal() {
+        return AccountRepository.summarizeExactly(ACCOUNT_NUMBER, BigDecimal.ZERO, this.chronological);
+    }
+
+    /**
+     * Summary by the kernel, over the amounts in minor units.
+     *
+     * @param blackhole
+     *            the sink of the results
+     */
+    @Benchmark
+    public void kernel(final Blackhole blackhole) {
+        blackhole.consume(AmountKernel.sum(this.amounts, this.operations));
+        blackhole.consume(AmountKernel.sumByType(this.amounts, this.types, this.operations, OperationType.values().length));
+        blackhole.consume(AmountKernel.runningRange(0L, this.amounts, this.operations));
+    }
+
+    /**
+     * Summary through the repository.
+     *
+     * @return the summary
+     */
+    @Benchmark
+    public BalanceSummary repository() {
+        return this.accountRepository.summarize(ACCOUNT_NUMBER);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            the arguments
+     * @throws RunnerException
+     *             if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AmountKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
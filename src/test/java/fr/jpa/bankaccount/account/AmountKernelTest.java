@@ -0,0 +1,57 @@
+package fr.jpa.bankaccount.account;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link AmountKernel}.
+ *
+ * @author jpauchet
+ */
+public class AmountKernelTest {
+
+    /**
+     * Tests {@link AmountKernel#sum(long[], int)}: only the first amounts are summed.
+     */
+    @Test
+    public void testSum() {
+        // call
+        final long sum = AmountKernel.sum(new long[] { 1250L, -600L, 5075L, 999L }, 3);
+
+        // check
+        assertThat(sum, equalTo(5725L));
+    }
+
+    /**
+     * Tests {@link AmountKernel#sumByType(long[], int[], int, int)}: amounts without type are ignored.
+     */
+    @Test
+    public void testSumByType() {
+        // call
+        final long[] sums = AmountKernel.sumByType(new long[] { 1250L, -600L, 5075L, 42L }, new int[] { 0, 1, 0, -1 }, 4, 2);
+
+        // check
+        assertThat(sums.length, equalTo(2));
+        assertThat(sums[0], equalTo(6325L));
+        assertThat(sums[1], equalTo(-600L));
+    }
+
+    /**
+     * Tests {@link AmountKernel#runningRange(long, long[], int)}.
+     */
+    @Test
+    public void testRunningRange() {
+        // call
+        final long[] range = AmountKernel.runningRange(100L, new long[] { -250L, 1000L, -300L }, 3);
+        final long[] empty = AmountKernel.runningRange(100L, new long[0], 0);
+
+        // check
+        assertThat(range[0], equalTo(-150L));
+        assertThat(range[1], equalTo(850L));
+        assertThat(empty[0], equalTo(100L));
+        assertThat(empty[1], equalTo(100L));
+    }
+
+}
@@ -0,0 +1,252 @@
+package fr.jpa.bankaccount.account;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.jpa.bankaccount.bean.AuditReport;
+import fr.jpa.bankaccount.bean.Operation;
+import fr.jpa.bankaccount.storage.ArchivePolicy;
+import fr.jpa.bankaccount.storage.OperationArchive;
+
+/**
+ * Tests {@link BalanceAuditor}.
+ *
+ * @author jpauchet
+ */
+public class BalanceAuditorTest {
+
+    /** Reference date. */
+    private static final Instant NOW = Instant.parse("2018-03-14T00:00:00.00Z");
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates deposits on many accounts.
+     *
+     * @param accountRepository
+     *            the accounts storage
+     * @param accounts
+     *            the number of accounts
+     * @param operationsPerAccount
+     *            the number of operations per account
+     */
+    private static void fill(final AccountRepository accountRepository, final int accounts, final int operationsPerAccount) {
+        for (int a = 0; a < accounts; a++) {
+            for (int i = 0; i < operationsPerAccount; i++) {
+                accountRepository.create(new Operation(Integer.toString(a), OperationType.DEPOSIT, NOW.plusSeconds(i), BigDecimal.ZERO, new BigDecimal("1.25")));
+            }
+        }
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#audit()} on consistent accounts.
+     */
+    @Test
+    public void testAudit() {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository();
+        fill(accountRepository, 500, 20);
+
+        // call
+        final AuditReport report = new BalanceAuditor(accountRepository).audit();
+
+        // check
+        assertThat(report.getAccounts(), equalTo(500));
+        assertThat(report.getOperations(), equalTo(10000L));
+        assertThat(report.getDiscrepancies(), empty());
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#audit()} on a history changed behind the stored balance.
+     */
+    @Test
+    public void testAuditDiscrepancy() {
+        // prepare
+        final List<Operation> operations = new ArrayList<>();
+        operations.add(new Operation("12345", OperationType.DEPOSIT, NOW, BigDecimal.ZERO, new BigDecimal("12.50")));
+        final Map<String, List<Operation>> accounts = new HashMap<>();
+        accounts.put("12345", operations);
+        final AccountRepository accountRepository = new AccountRepository(accounts);
+        operations.add(new Operation("12345", OperationType.WITHDRAWAL, NOW, new BigDecimal("0.001"), BigDecimal.ZERO));
+
+        // call
+        final AuditReport report = new BalanceAuditor(accountRepository).audit();
+
+        // check
+        assertThat(report.getDiscrepancies(), hasSize(1));
+        assertThat(report.getDiscrepancies().get(0),
+                allOf( //
+                        hasProperty("accountNumber", equalTo("12345")), //
+                        hasProperty("storedBalance", equalTo(new BigDecimal("12.50"))), //
+                        hasProperty("computedBalance", equalTo(new BigDecimal("12.499"))) //
+                ) //
+        );
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#auditIncremental()}: only the changed accounts are audited again.
+     */
+    @Test
+    public void testAuditIncremental() {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository();
+        fill(accountRepository, 100, 5);
+        final BalanceAuditor auditor = new BalanceAuditor(accountRepository);
+        final AuditReport first = auditor.auditIncremental();
+        accountRepository.create(new Operation("7", OperationType.WITHDRAWAL, NOW, new BigDecimal("1.00"), BigDecimal.ZERO));
+
+        // call
+        final AuditReport second = auditor.auditIncremental();
+        final AuditReport third = auditor.auditIncremental();
+
+        // check
+        assertThat(first.getAccounts(), equalTo(100));
+        assertThat(second.getAccounts(), equalTo(1));
+        assertThat(second.getOperations(), equalTo(6L));
+        assertThat(second.getDiscrepancies(), empty());
+        assertThat(third.getAccounts(), equalTo(0));
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#auditIncremental()} after accounts are removed: they are forgotten.
+     */
+    @Test
+    public void testAuditIncrementalRemoved() {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository();
+        fill(accountRepository, 10, 5);
+        final BalanceAuditor auditor = new BalanceAuditor(accountRepository);
+        auditor.auditIncremental();
+        accountRepository.remove("3");
+        accountRepository.remove("7");
+
+        // call
+        final AuditReport report = auditor.auditIncremental();
+
+        // check
+        assertThat(report.getAccounts(), equalTo(0));
+        assertThat(auditor.getAuditedAccountNumbers(), hasSize(8));
+        assertThat(auditor.getAuditedAccountNumbers(), not(hasItem("3")));
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#audit()} including the archived operations.
+     */
+    @Test
+    public void testAuditArchive() {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository(null, new OperationArchive(this.folder.getRoot().toPath()));
+        fill(accountRepository, 10, 10);
+        accountRepository.compactAll(ArchivePolicy.keepLatest(3), NOW);
+
+        // call
+        final AuditReport report = new BalanceAuditor(accountRepository, ForkJoinPool.commonPool(), true).audit();
+
+        // check
+        assertThat(report.getAccounts(), equalTo(10));
+        assertThat(report.getOperations(), equalTo(100L));
+        assertThat(report.getDiscrepancies(), empty());
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#audit()} while operations are being created.
+     */
+    @Test(timeout = 30000)
+    public void testAuditOnline() throws Exception {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository();
+        fill(accountRepository, 200, 10);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread writer = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                accountRepository.create(new Operation(Integer.toString(i++ % 200), OperationType.WITHDRAWAL, NOW, new BigDecimal("0.10"), BigDecimal.ZERO));
+            }
+        });
+        writer.start();
+
+        // call
+        final List<AuditReport> reports = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                reports.add(new BalanceAuditor(accountRepository).audit());
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+
+        // check
+        for (final AuditReport report : reports) {
+            assertThat(report.getAccounts(), equalTo(200));
+            assertThat(report.getDiscrepancies(), empty());
+        }
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#audit()} including the archived operations while a block is being appended to an
+     * archive segment: the half-written block is ignored.
+     */
+    @Test
+    public void testAuditArchiveBeingAppended() throws Exception {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository(null, new OperationArchive(this.folder.getRoot().toPath()));
+        fill(accountRepository, 10, 10);
+        accountRepository.compactAll(ArchivePolicy.keepLatest(3), NOW);
+        Files.write(this.folder.getRoot().toPath().resolve("0.archive"), new byte[] { 0x1f, (byte) 0x8b, 8, 0 }, StandardOpenOption.APPEND);
+
+        // call
+        final AuditReport report = new BalanceAuditor(accountRepository, ForkJoinPool.commonPool(), true).audit();
+
+        // check
+        assertThat(report.getAccounts(), equalTo(10));
+        assertThat(report.getDiscrepancies(), empty());
+    }
+
+    /**
+     * Tests {@link BalanceAuditor#audit()} including the archived operations with an unreadable archive segment: the
+     * account is reported and the other accounts are audited.
+     */
+    @Test
+    public void testAuditArchiveUnreadable() throws Exception {
+        // prepare
+        final AccountRepository accountRepository = new AccountRepository(null, new OperationArchive(this.folder.getRoot().toPath()));
+        fill(accountRepository, 10, 10);
+        accountRepository.compactAll(ArchivePolicy.keepLatest(3), NOW);
+        final Path segment = this.folder.getRoot().toPath().resolve("0.archive");
+        Files.write(segment, new byte[(int) Files.size(segment)]);
+
+        // call
+        final AuditReport report = new BalanceAuditor(accountRepository, ForkJoinPool.commonPool(), true).audit();
+
+        // check
+        assertThat(report.getAccounts(), equalTo(10));
+        assertThat(report.getDiscrepancies(), hasSize(1));
+        assertThat(report.getDiscrepancies().get(0).getAccountNumber(), equalTo("0"));
+    }
+
+}
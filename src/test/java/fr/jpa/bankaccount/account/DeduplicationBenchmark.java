@@ -0,0 +1,90 @@
+package fr.jpa.bankaccount.account;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the overhead of the idempotency keys on {@link AccountService#depositMoney(String, BigDecimal, String)}.
+ * <p>
+ * Run with {@code mvn test-compile} then the {@link #main(String[])} method on the test classpath.
+ *
+ * @author jpauchet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeduplicationBenchmark {
+
+    /** Deposited amount. */
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    /** Bank accounts management service. */
+    private AccountService accountService;
+
+    /** Request counter. */
+    private long request;
+
+    /**
+     * Prepares a fresh service for each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.accountService = new AccountService(new AccountRepository(), Instant::now);
+    }
+
+    /**
+     * Deposit without idempotency key.
+     */
+    @Benchmark
+    public void depositWithoutKey() {
+        this.accountService.depositMoney("12345", AMOUNT);
+    }
+
+    /**
+     * Deposit with a new idempotency key.
+     */
+    @Benchmark
+    public void depositWithKey() {
+        this.accountService.depositMoney("12345", AMOUNT, Long.toString(this.request++));
+    }
+
+    /**
+     * Retried deposit, answered by the deduplication window.
+     */
+    @Benchmark
+    public void depositRetried() {
+        this.accountService.depositMoney("12345", AMOUNT, "request");
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            the arguments
+     * @throws RunnerException
+     *             if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DeduplicationBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
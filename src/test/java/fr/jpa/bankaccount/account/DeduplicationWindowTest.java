@@ -0,0 +1,94 @@
+package fr.jpa.bankaccount.account;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link DeduplicationWindow}.
+ *
+ * @author jpauchet
+ */
+public class DeduplicationWindowTest {
+
+    /** Reference date. */
+    private static final Instant NOW = Instant.parse("2018-03-14T00:00:00.00Z");
+
+    /**
+     * Tests {@link DeduplicationWindow#get(String, Instant)}.
+     */
+    @Test
+    public void testGet() {
+        // prepare
+        final DeduplicationWindow<Boolean> window = new DeduplicationWindow<>(4, Duration.ofMinutes(5));
+        window.put("request-1", Boolean.FALSE, NOW);
+
+        // call
+        final Boolean known = window.get("request-1", NOW.plusSeconds(60));
+        final Boolean unknown = window.get("request-2", NOW.plusSeconds(60));
+
+        // check
+        assertThat(known, equalTo(Boolean.FALSE));
+        assertThat(unknown, nullValue());
+    }
+
+    /**
+     * Tests {@link DeduplicationWindow#get(String, Instant)} once the retention is exceeded.
+     */
+    @Test
+    public void testGetExpired() {
+        // prepare
+        final DeduplicationWindow<Boolean> window = new DeduplicationWindow<>(4, Duration.ofMinutes(5));
+        window.put("request-1", Boolean.TRUE, NOW);
+
+        // call
+        final Boolean actual = window.get("request-1", NOW.plusSeconds(301));
+
+        // check
+        assertThat(actual, nullValue());
+    }
+
+    /**
+     * Tests {@link DeduplicationWindow#put(String, Object, Instant)} beyond the capacity: the oldest keys are evicted.
+     */
+    @Test
+    public void testPutEvictsOldest() {
+        // prepare
+        final DeduplicationWindow<Integer> window = new DeduplicationWindow<>(20, Duration.ofHours(1));
+
+        // call
+        for (int i = 0; i < 25; i++) {
+            window.put("request-" + i, i, NOW.plusSeconds(i));
+        }
+
+        // check
+        assertThat(window.size(), equalTo(20));
+        assertThat(window.get("request-4", NOW.plusSeconds(30)), nullValue());
+        assertThat(window.get("request-5", NOW.plusSeconds(30)), equalTo(5));
+        assertThat(window.get("request-24", NOW.plusSeconds(30)), equalTo(24));
+    }
+
+    /**
+     * Tests {@link DeduplicationWindow#put(String, Object, Instant)}: expired keys are purged.
+     */
+    @Test
+    public void testPutPurgesExpired() {
+        // prepare
+        final DeduplicationWindow<Integer> window = new DeduplicationWindow<>(20, Duration.ofMinutes(1));
+        window.put("request-1", 1, NOW);
+        window.put("request-2", 2, NOW.plusSeconds(30));
+
+        // call
+        window.put("request-3", 3, NOW.plusSeconds(80));
+
+        // check
+        assertThat(window.size(), equalTo(2));
+        assertThat(window.get("request-2", NOW.plusSeconds(80)), equalTo(2));
+    }
+
+}
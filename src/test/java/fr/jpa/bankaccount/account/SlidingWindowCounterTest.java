@@ -0,0 +1,85 @@
+package fr.jpa.bankaccount.account;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SlidingWindowCounter}.
+ *
+ * @author jpauchet
+ */
+public class SlidingWindowCounterTest {
+
+    /** One minute, in milliseconds. */
+    private static final long MINUTE = 60_000L;
+
+    /**
+     * Tests {@link SlidingWindowCounter#total(long)} as the window slides.
+     */
+    @Test
+    public void testTotal() {
+        // prepare
+        final SlidingWindowCounter counter = new SlidingWindowCounter(Duration.ofHours(1), 60);
+        final long start = 1_520_985_600_000L;
+        counter.add(start, 5);
+        counter.add(start + 10 * MINUTE, 7);
+        counter.add(start + 59 * MINUTE, 1);
+
+        // call
+        final long withinHour = counter.total(start + 59 * MINUTE);
+        final long firstExpired = counter.total(start + 60 * MINUTE);
+        final long secondExpired = counter.total(start + 70 * MINUTE);
+        final long allExpired = counter.total(start + 200 * MINUTE);
+
+        // check
+        assertThat(withinHour, equalTo(13L));
+        assertThat(firstExpired, equalTo(8L));
+        assertThat(secondExpired, equalTo(1L));
+        assertThat(allExpired, equalTo(0L));
+    }
+
+    /**
+     * Tests {@link SlidingWindowCounter#add(long, long)} of late values.
+     */
+    @Test
+    public void testAddLate() {
+        // prepare
+        final SlidingWindowCounter counter = new SlidingWindowCounter(Duration.ofHours(1), 60);
+        final long start = 1_520_985_600_000L;
+        counter.add(start + 90 * MINUTE, 1);
+
+        // call
+        counter.add(start + 45 * MINUTE, 2);
+        counter.add(start, 4);
+
+        // check
+        assertThat(counter.total(start + 90 * MINUTE), equalTo(3L));
+    }
+
+    /**
+     * Tests {@link SlidingWindowCounter#total(long)} saturating instead of overflowing, until the large values leave
+     * the window.
+     */
+    @Test
+    public void testTotalSaturated() {
+        // prepare
+        final SlidingWindowCounter counter = new SlidingWindowCounter(Duration.ofHours(1), 60);
+        final long start = 1_000_000 * MINUTE;
+        counter.add(start, Long.MAX_VALUE - 1);
+        counter.add(start + MINUTE, 5);
+        counter.add(start + 2 * MINUTE, 7);
+
+        // call
+        final long saturated = counter.total(start + 2 * MINUTE);
+        final long slid = counter.total(start + 60 * MINUTE);
+
+        // check
+        assertThat(saturated, equalTo(Long.MAX_VALUE));
+        assertThat(slid, equalTo(12L));
+    }
+
+}
@@ -0,0 +1,119 @@
+package fr.jpa.bankaccount.account;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import fr.jpa.bankaccount.date.CachedClockDateProvider;
+
+/**
+ * Measures the withdrawal throughput with and without {@link WithdrawalRules}, on a few hot accounts.
+ * <p>
+ * Run with {@code mvn test-compile} then the {@link #main(String[])} method on the test classpath.
+ *
+ * @author jpauchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WithdrawalRulesBenchmark {
+
+    /** Withdrawn amount. */
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    /** Number of accounts. */
+    @Param({ "1", "16" })
+    private int accounts;
+
+    /** Date provider. */
+    private CachedClockDateProvider dateProvider;
+
+    /** Service without rules. */
+    private AccountService withoutRules;
+
+    /** Service with rules that never reject. */
+    private AccountService withRules;
+
+    /**
+     * Prepares the services for each iteration, so that the accounts do not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.dateProvider = new CachedClockDateProvider(Duration.ofMillis(1));
+        this.withoutRules = new AccountService(new AccountRepository(), this.dateProvider);
+        this.withRules = new AccountService(new AccountRepository(), this.dateProvider,
+                new WithdrawalRules(new BigDecimal("1000000000.00"), Integer.MAX_VALUE, new BigDecimal("-1000000000.00")));
+    }
+
+    /**
+     * Stops the date provider.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        this.dateProvider.close();
+    }
+
+    /**
+     * Withdrawal without rules.
+     *
+     * @return whether the balance is positive
+     */
+    @Benchmark
+    public boolean withdrawWithoutRules() {
+        return this.withoutRules.withdrawMoney(this.account(), AMOUNT);
+    }
+
+    /**
+     * Withdrawal checked against the rules.
+     *
+     * @return whether the balance is positive
+     */
+    @Benchmark
+    public boolean withdrawWithRules() {
+        return this.withRules.withdrawMoney(this.account(), AMOUNT);
+    }
+
+    /**
+     * Picks an account.
+     *
+     * @return the account number
+     */
+    private String account() {
+        return Integer.toString((int) (Thread.currentThread().getId() % this.accounts));
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            the arguments
+     * @throws RunnerException
+     *             if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WithdrawalRulesBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
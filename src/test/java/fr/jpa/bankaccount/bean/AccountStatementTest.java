@@ -50,4 +50,31 @@ public class AccountStatementTest {
         assertThat(printed, equalTo(expectedPrinted.toString()));
     }
 
+    /**
+     * Tests {@link AccountStatement#getPrint()} with an opening balance carried forward from archived operations.
+     */
+    @Test
+    public void testPrintOpeningBalance() {
+        // prepare
+        final List<Operation> operations = Arrays.asList( //
+                new Operation("12345", OperationType.WITHDRAWAL, Instant.parse("2018-03-14T14:17:00.00Z"), new BigDecimal("6.00"), BigDecimal.ZERO) //
+        );
+        final AccountStatement accountStatement = new AccountStatement(operations, new BigDecimal("63.25"), new BigDecimal("57.25"));
+
+        // call
+        final String printed = accountStatement.getPrint();
+
+        // check
+        final StringBuilder expectedPrinted = new StringBuilder();
+        expectedPrinted.append("Opening balance\r\n");
+        expectedPrinted.append("63.25\r\n");
+        expectedPrinted.append("\r\n");
+        expectedPrinted.append("Operation  | Date           | Credit | Debit\r\n");
+        expectedPrinted.append("Withdrawal | 14/03/18 15:17 |      0 |   6.00\r\n");
+        expectedPrinted.append("\r\n");
+        expectedPrinted.append("Balance\r\n");
+        expectedPrinted.append("57.25\r\n");
+        assertThat(printed, equalTo(expectedPrinted.toString()));
+    }
+
 }
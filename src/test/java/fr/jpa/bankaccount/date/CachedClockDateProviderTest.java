@@ -0,0 +1,145 @@
+package fr.jpa.bankaccount.date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link CachedClockDateProvider}.
+ *
+ * @author jpauchet
+ */
+public class CachedClockDateProviderTest {
+
+    /**
+     * Clock set by the tests.
+     */
+    private static final class SettableClock extends Clock {
+
+        /** Current date. */
+        private volatile Instant now;
+
+        /**
+         * Constructor.
+         *
+         * @param now
+         *            the current date
+         */
+        private SettableClock(final Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.now;
+        }
+
+    }
+
+    /**
+     * Tests {@link CachedClockDateProvider#getDate()} within a tick.
+     */
+    @Test
+    public void testGetDateWithinTick() {
+        // prepare
+        final Instant now = Instant.parse("2018-03-14T00:00:00.00Z");
+        try (CachedClockDateProvider dateProvider = new CachedClockDateProvider(new SettableClock(now), Duration.ofHours(1))) {
+
+            // call
+            final Instant first = dateProvider.getDate();
+            final Instant second = dateProvider.getDate();
+
+            // check
+            assertThat(first, equalTo(now));
+            assertThat(second, equalTo(now.plusNanos(1)));
+        }
+    }
+
+    /**
+     * Tests {@link CachedClockDateProvider#getDate()} after ticks, including a clock going backwards.
+     */
+    @Test
+    public void testGetDateAfterTick() {
+        // prepare
+        final Instant now = Instant.parse("2018-03-14T00:00:00.00Z");
+        final SettableClock clock = new SettableClock(now);
+        try (CachedClockDateProvider dateProvider = new CachedClockDateProvider(clock, Duration.ofHours(1))) {
+            dateProvider.getDate();
+
+            // call
+            clock.now = now.plusSeconds(5);
+            dateProvider.tick();
+            final Instant forward = dateProvider.getDate();
+            clock.now = now.minusSeconds(5);
+            dateProvider.tick();
+            final Instant backward = dateProvider.getDate();
+
+            // check
+            assertThat(forward, equalTo(now.plusSeconds(5)));
+            assertThat(backward, equalTo(now.plusSeconds(5).plusNanos(1)));
+        }
+    }
+
+    /**
+     * Tests {@link CachedClockDateProvider#getDate()} from concurrent threads: all the dates are distinct and increase
+     * in each thread.
+     */
+    @Test(timeout = 30000)
+    public void testGetDateConcurrent() throws Exception {
+        // prepare
+        final int threads = 4;
+        final int datesPerThread = 20000;
+        final List<List<Instant>> dates = new ArrayList<>();
+        final List<Thread> workers = new ArrayList<>();
+        try (CachedClockDateProvider dateProvider = new CachedClockDateProvider(Duration.ofMillis(1))) {
+            for (int t = 0; t < threads; t++) {
+                final List<Instant> threadDates = new ArrayList<>(datesPerThread);
+                dates.add(threadDates);
+                workers.add(new Thread(() -> {
+                    for (int i = 0; i < datesPerThread; i++) {
+                        threadDates.add(dateProvider.getDate());
+                    }
+                }));
+            }
+
+            // call
+            workers.forEach(Thread::start);
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        // check
+        final Set<Instant> distinct = new HashSet<>();
+        for (final List<Instant> threadDates : dates) {
+            for (int i = 1; i < threadDates.size(); i++) {
+                assertThat(threadDates.get(i), greaterThan(threadDates.get(i - 1)));
+            }
+            distinct.addAll(threadDates);
+        }
+        assertThat(distinct.size(), equalTo(threads * datesPerThread));
+    }
+
+}
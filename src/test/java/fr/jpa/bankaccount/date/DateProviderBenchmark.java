@@ -0,0 +1,115 @@
+package fr.jpa.bankaccount.date;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of a timestamp with {@link Instant#now()} and with {@link CachedClockDateProvider}, from one and
+ * from several threads.
+ * <p>
+ * Run with {@code mvn test-compile} then the {@link #main(String[])} method on the test classpath.
+ *
+ * @author jpauchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateProviderBenchmark {
+
+    /** Wall clock date provider. */
+    private final DateProvider systemDateProvider = Instant::now;
+
+    /** Cached clock date provider. */
+    private CachedClockDateProvider cachedDateProvider;
+
+    /**
+     * Starts the cached clock.
+     */
+    @Setup
+    public void setUp() {
+        this.cachedDateProvider = new CachedClockDateProvider(Duration.ofMillis(1));
+    }
+
+    /**
+     * Stops the cached clock.
+     */
+    @TearDown
+    public void tearDown() {
+        this.cachedDateProvider.close();
+    }
+
+    /**
+     * Wall clock, one thread.
+     *
+     * @return the date
+     */
+    @Benchmark
+    public Instant system() {
+        return this.systemDateProvider.getDate();
+    }
+
+    /**
+     * Cached clock, one thread.
+     *
+     * @return the date
+     */
+    @Benchmark
+    public Instant cached() {
+        return this.cachedDateProvider.getDate();
+    }
+
+    /**
+     * Wall clock, four threads.
+     *
+     * @return the date
+     */
+    @Benchmark
+    @Threads(4)
+    public Instant systemContended() {
+        return this.systemDateProvider.getDate();
+    }
+
+    /**
+     * Cached clock, four threads.
+     *
+     * @return the date
+     */
+    @Benchmark
+    @Threads(4)
+    public Instant cachedContended() {
+        return this.cachedDateProvider.getDate();
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            the arguments
+     * @throws RunnerException
+     *             if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DateProviderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
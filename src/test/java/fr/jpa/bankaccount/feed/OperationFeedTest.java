@@ -0,0 +1,174 @@
+package fr.jpa.bankaccount.feed;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fr.jpa.bankaccount.account.OperationType;
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Tests {@link OperationFeed}.
+ *
+ * @author jpauchet
+ */
+public class OperationFeedTest {
+
+    /**
+     * Builds a deposit.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param cents
+     *            the deposited amount, in cents
+     * @return the operation
+     */
+    private static Operation deposit(final String accountNumber, final long cents) {
+        return new Operation(accountNumber, OperationType.DEPOSIT, Instant.parse("2018-03-14T00:00:00.00Z"), BigDecimal.ZERO, BigDecimal.valueOf(cents, 2));
+    }
+
+    /**
+     * Tests {@link Subscription#poll(int)}: operations are delivered in batches and in publication order.
+     */
+    @Test
+    public void testPoll() {
+        // prepare
+        final OperationFeed feed = new OperationFeed(8, OverflowPolicy.BLOCK);
+        final Subscription subscription = feed.subscribe();
+        final Operation first = deposit("12345", 1);
+        final Operation second = deposit("12345", 2);
+        final Operation third = deposit("67890", 3);
+        feed.publish(first);
+        feed.publish(second);
+        feed.publish(third);
+
+        // call
+        final List<Operation> batch = subscription.poll(2);
+        final List<Operation> rest = subscription.poll(2);
+        final List<Operation> none = subscription.poll(2);
+
+        // check
+        assertThat(batch, contains(first, second));
+        assertThat(rest, contains(third));
+        assertThat(none, empty());
+    }
+
+    /**
+     * Tests {@link OperationFeed#subscribe()}: subscribers have their own cursor and only see later operations.
+     */
+    @Test
+    public void testSubscribeIndependentCursors() {
+        // prepare
+        final OperationFeed feed = new OperationFeed(8, OverflowPolicy.BLOCK);
+        final Subscription early = feed.subscribe();
+        feed.publish(deposit("12345", 1));
+        final Subscription late = feed.subscribe();
+        feed.publish(deposit("12345", 2));
+
+        // call
+        final List<Operation> earlyBatch = early.poll(10);
+        final List<Operation> lateBatch = late.poll(10);
+
+        // check
+        assertThat(earlyBatch, hasSize(2));
+        assertThat(lateBatch, hasSize(1));
+        assertThat(lateBatch.get(0).getCredit(), equalTo(new BigDecimal("0.02")));
+    }
+
+    /**
+     * Tests {@link OverflowPolicy#DROP_OLDEST}: a lagging subscriber skips the overwritten operations.
+     */
+    @Test
+    public void testDropOldest() {
+        // prepare
+        final OperationFeed feed = new OperationFeed(4, OverflowPolicy.DROP_OLDEST);
+        final Subscription subscription = feed.subscribe();
+        for (int i = 0; i < 10; i++) {
+            feed.publish(deposit("12345", i));
+        }
+
+        // call
+        final List<Operation> batch = subscription.poll(10);
+
+        // check
+        assertThat(batch, hasSize(4));
+        assertThat(batch.get(0).getCredit(), equalTo(BigDecimal.valueOf(6, 2)));
+        assertThat(subscription.getDropped(), equalTo(6L));
+    }
+
+    /**
+     * Tests {@link OverflowPolicy#BLOCK} with concurrent publishers: nothing is lost and the operations of each
+     * publisher keep their order.
+     */
+    @Test(timeout = 30000)
+    public void testBlockConcurrentPublishers() throws Exception {
+        // prepare
+        final OperationFeed feed = new OperationFeed(16, OverflowPolicy.BLOCK);
+        final Subscription subscription = feed.subscribe();
+        final int publishers = 4;
+        final int operationsPerPublisher = 5000;
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            final String accountNumber = Integer.toString(p);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < operationsPerPublisher; i++) {
+                    feed.publish(deposit(accountNumber, i));
+                }
+            }));
+        }
+
+        // call
+        threads.forEach(Thread::start);
+        final Map<String, Long> last = new HashMap<>();
+        int received = 0;
+        boolean ordered = true;
+        while (received < publishers * operationsPerPublisher) {
+            for (final Operation operation : subscription.poll(64, Duration.ofSeconds(1))) {
+                final long cents = operation.getCredit().unscaledValue().longValue();
+                final Long previous = last.put(operation.getAccountNumber(), cents);
+                ordered &= previous == null ? cents == 0 : cents == previous + 1;
+                received++;
+            }
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        // check
+        assertThat(ordered, equalTo(true));
+        assertThat(subscription.getDropped(), equalTo(0L));
+        assertThat(subscription.poll(1), empty());
+    }
+
+    /**
+     * Tests {@link Subscription#close()}: a closed subscription no longer holds the publishers back.
+     */
+    @Test(timeout = 10000)
+    public void testClose() {
+        // prepare
+        final OperationFeed feed = new OperationFeed(2, OverflowPolicy.BLOCK);
+        final Subscription subscription = feed.subscribe();
+        feed.publish(deposit("12345", 1));
+        feed.publish(deposit("12345", 2));
+
+        // call
+        subscription.close();
+        feed.publish(deposit("12345", 3));
+
+        // check
+        assertThat(feed.getNextSequence(), equalTo(3L));
+    }
+
+}
@@ -0,0 +1,128 @@
+package fr.jpa.bankaccount.partition;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.isOneOf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ConsistentHashRing}.
+ *
+ * @author jpauchet
+ */
+public class ConsistentHashRingTest {
+
+    /**
+     * Tests {@link ConsistentHashRing#partitionOf(String)}: every partition gets a share of the accounts.
+     */
+    @Test
+    public void testPartitionOf() {
+        // prepare
+        final ConsistentHashRing ring = new ConsistentHashRing(64);
+        ring.add("a");
+        ring.add("b");
+        ring.add("c");
+
+        // call
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            counts.merge(ring.partitionOf(Integer.toString(i)), 1, Integer::sum);
+        }
+
+        // check
+        assertThat(counts.size(), equalTo(3));
+        for (final int count : counts.values()) {
+            assertThat(count, greaterThan(500));
+        }
+        assertThat(ring.partitionOf("12345"), equalTo(ring.partitionOf("12345")));
+    }
+
+    /**
+     * Tests {@link ConsistentHashRing#add(String)}: the accounts only move to the new partition.
+     */
+    @Test
+    public void testAdd() {
+        // prepare
+        final ConsistentHashRing ring = new ConsistentHashRing(64);
+        ring.add("a");
+        ring.add("b");
+        final Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            before.put(Integer.toString(i), ring.partitionOf(Integer.toString(i)));
+        }
+
+        // call
+        ring.add("c");
+
+        // check
+        int moved = 0;
+        for (final Map.Entry<String, String> entry : before.entrySet()) {
+            final String partition = ring.partitionOf(entry.getKey());
+            assertThat(partition, isOneOf(entry.getValue(), "c"));
+            if (!partition.equals(entry.getValue())) {
+                moved++;
+            }
+        }
+        assertThat(moved, greaterThan(0));
+    }
+
+    /**
+     * Tests {@link ConsistentHashRing#remove(String)}: the accounts go back to their previous partitions.
+     */
+    @Test
+    public void testRemove() {
+        // prepare
+        final ConsistentHashRing ring = new ConsistentHashRing(64);
+        ring.add("a");
+        ring.add("b");
+        final Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            before.put(Integer.toString(i), ring.partitionOf(Integer.toString(i)));
+        }
+        ring.add("c");
+
+        // call
+        ring.remove("c");
+
+        // check
+        for (final Map.Entry<String, String> entry : before.entrySet()) {
+            assertThat(ring.partitionOf(entry.getKey()), equalTo(entry.getValue()));
+        }
+        assertThat(ring.getPartitions(), contains("a", "b"));
+    }
+
+    /**
+     * Tests {@link ConsistentHashRing#remove(String)} after a collision of two points: the point of the remaining
+     * partition is kept.
+     */
+    @Test
+    public void testRemoveAfterCollision() {
+        // prepare
+        final ConsistentHashRing ring = new ConsistentHashRing(1, key -> "a#0".equals(key) || "b#0".equals(key) ? 42L : key.hashCode());
+        ring.add("a");
+        ring.add("b");
+
+        // call
+        ring.remove("b");
+
+        // check
+        assertThat(ring.partitionOf("12345"), equalTo("a"));
+        assertThat(ring.getPartitions(), contains("a"));
+    }
+
+    /**
+     * Tests {@link ConsistentHashRing#partitionOf(String)} without partition.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testPartitionOfEmpty() {
+        // call
+        new ConsistentHashRing(8).partitionOf("12345");
+    }
+
+}
@@ -0,0 +1,133 @@
+package fr.jpa.bankaccount.partition;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import fr.jpa.bankaccount.account.AccountRepository;
+import fr.jpa.bankaccount.account.AccountService;
+import fr.jpa.bankaccount.date.CachedClockDateProvider;
+
+/**
+ * Measures the deposit throughput of a {@link PartitionedAccountService} according to the number of partitions, the
+ * accounts being spread over all of them.
+ * <p>
+ * Run with {@code mvn test-compile} then the {@link #main(String[])} method on the test classpath.
+ *
+ * @author jpauchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class PartitionedAccountServiceBenchmark {
+
+    /** Deposited amount. */
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    /** Number of accounts. */
+    private static final int ACCOUNTS = 256;
+
+    /** Number of partitions. */
+    @Param({ "1", "2", "4" })
+    private int partitions;
+
+    /** Date provider. */
+    private CachedClockDateProvider dateProvider;
+
+    /** Transport to the partitions. */
+    private LoopbackTransport transport;
+
+    /** Partitioned service. */
+    private PartitionedAccountService partitionedAccountService;
+
+    /**
+     * Prepares the partitions for each iteration, so that the accounts do not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.dateProvider = new CachedClockDateProvider(Duration.ofMillis(1));
+        this.transport = new LoopbackTransport();
+        this.partitionedAccountService = new PartitionedAccountService(this.transport, 64);
+        for (int i = 0; i < this.partitions; i++) {
+            final String partitionId = "partition-" + i;
+            this.transport.register(partitionId, new AccountService(new AccountRepository(), this.dateProvider));
+            this.partitionedAccountService.addPartition(partitionId);
+        }
+    }
+
+    /**
+     * Stops the partitions and the date provider.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        this.transport.close();
+        this.dateProvider.close();
+    }
+
+    /**
+     * Deposit on an account of any partition.
+     *
+     * @param state
+     *            the state of the thread
+     */
+    @Benchmark
+    public void deposit(final ThreadState state) {
+        this.partitionedAccountService.depositMoney(state.next(), AMOUNT);
+    }
+
+    /**
+     * Accounts used by a thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        /** Index of the next account. */
+        private int next;
+
+        /**
+         * Picks the next account.
+         *
+         * @return the account number
+         */
+        String next() {
+            this.next = (this.next + 1) % ACCOUNTS;
+            return Integer.toString(this.next);
+        }
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            the arguments
+     * @throws RunnerException
+     *             if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PartitionedAccountServiceBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,333 @@
+package fr.jpa.bankaccount.partition;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.jpa.bankaccount.account.AccountExport;
+import fr.jpa.bankaccount.account.AccountRepository;
+import fr.jpa.bankaccount.account.AccountService;
+import fr.jpa.bankaccount.storage.ArchivePolicy;
+import fr.jpa.bankaccount.storage.OperationArchive;
+
+/**
+ * Tests {@link PartitionedAccountService}.
+ *
+ * @author jpauchet
+ */
+public class PartitionedAccountServiceTest {
+
+    /** Temporary folder holding the archives of the partitions. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Transport to the partitions. */
+    private LoopbackTransport transport;
+
+    /** Account services, by partition. */
+    private Map<String, AccountService> accountServices;
+
+    /** Partitioned service. */
+    private PartitionedAccountService partitionedAccountService;
+
+    /**
+     * Prepares the unit tests execution.
+     */
+    @Before
+    public void setUp() {
+        this.transport = new LoopbackTransport();
+        this.accountServices = new HashMap<>();
+        this.partitionedAccountService = new PartitionedAccountService(this::sendSerialized, 64);
+        this.addPartition("a");
+        this.addPartition("b");
+    }
+
+    /**
+     * Cleans up after the unit tests execution.
+     */
+    @After
+    public void tearDown() {
+        this.transport.close();
+    }
+
+    /**
+     * Tests {@link PartitionedAccountService#depositMoney(String, BigDecimal)}: the operation is stored by the owning
+     * partition only.
+     */
+    @Test
+    public void testDepositMoney() {
+        // call
+        this.partitionedAccountService.depositMoney("12345", new BigDecimal("42.00"));
+        this.partitionedAccountService.depositMoney("12345", new BigDecimal("8.00"));
+
+        // check
+        final String owner = this.partitionedAccountService.partitionOf("12345");
+        for (final Map.Entry<String, AccountService> entry : this.accountServices.entrySet()) {
+            final AccountRepository accountRepository = entry.getValue().getAccountRepository();
+            assertThat(accountRepository.list("12345"), hasSize(entry.getKey().equals(owner) ? 2 : 0));
+        }
+        assertThat(this.partitionedAccountService.establishAccountStatement("12345").getBalance(), equalTo(new BigDecimal("50.00")));
+    }
+
+    /**
+     * Tests {@link PartitionedAccountService#depositMoney(String, BigDecimal, String)} and
+     * {@link PartitionedAccountService#withdrawMoney(String, BigDecimal, String)} retried: the retries are ignored by
+     * the owning partition.
+     */
+    @Test
+    public void testRetriedWithIdempotencyKey() {
+        // prepare
+        this.partitionedAccountService.depositMoney("12345", new BigDecimal("10.00"), "deposit-1");
+        final boolean first = this.partitionedAccountService.withdrawMoney("12345", new BigDecimal("15.00"), "withdrawal-1");
+
+        // call
+        this.partitionedAccountService.depositMoney("12345", new BigDecimal("10.00"), "deposit-1");
+        final boolean retried = this.partitionedAccountService.withdrawMoney("12345", new BigDecimal("15.00"), "withdrawal-1");
+
+        // check
+        assertThat(first, equalTo(false));
+        assertThat(retried, equalTo(false));
+        final AccountService owner = this.accountServices.get(this.partitionedAccountService.partitionOf("12345"));
+        assertThat(owner.getAccountRepository().list("12345"), hasSize(2));
+        assertThat(this.partitionedAccountService.establishAccountStatement("12345").getBalance(), equalTo(new BigDecimal("-5.00")));
+    }
+
+    /**
+     * Tests {@link PartitionedAccountService#addPartition(String)}: the moved accounts keep their balance.
+     */
+    @Test
+    public void testAddPartition() {
+        // prepare
+        this.deposit(100);
+
+        // call
+        final int moved = this.addPartition("c");
+
+        // check
+        assertThat(moved, greaterThan(0));
+        assertThat(this.accountServices.get("c").getAccountRepository().getAccountNumbers(), hasSize(moved));
+        int total = 0;
+        for (final AccountService accountService : this.accountServices.values()) {
+            total += accountService.getAccountRepository().getAccountNumbers().size();
+        }
+        assertThat(total, equalTo(100));
+        for (int i = 0; i < 100; i++) {
+            final String accountNumber = Integer.toString(i);
+            final AccountService owner = this.accountServices.get(this.partitionedAccountService.partitionOf(accountNumber));
+            assertThat(owner.getAccountRepository().list(accountNumber), hasSize(2));
+            assertThat(this.partitionedAccountService.establishAccountStatement(accountNumber).getBalance(),
+                    equalTo(new BigDecimal(i + ".00")));
+        }
+    }
+
+    /**
+     * Tests {@link PartitionedAccountService#addPartition(String)} with an account having archived operations: the
+     * account moves with its archived operations and its opening balance.
+     */
+    @Test
+    public void testAddPartitionWithArchivedAccount() {
+        // prepare
+        final Map<String, String> owners = this.deposit(100);
+        final ConsistentHashRing ring = new ConsistentHashRing(64);
+        ring.add("a");
+        ring.add("b");
+        ring.add("c");
+        String archived = null;
+        for (int i = 99; archived == null; i--) {
+            if ("c".equals(ring.partitionOf(Integer.toString(i)))) {
+                archived = Integer.toString(i);
+            }
+        }
+        final AccountRepository previous = this.accountServices.get(owners.get(archived)).getAccountRepository();
+        previous.compact(archived, ArchivePolicy.keepLatest(1), Instant.parse("2018-03-15T00:00:00.00Z"));
+
+        // call
+        this.addPartition("c");
+
+        // check
+        final AccountRepository moved = this.accountServices.get("c").getAccountRepository();
+        assertThat(this.partitionedAccountService.partitionOf(archived), equalTo("c"));
+        assertThat(previous.getAccountNumbers(), not(hasItem(archived)));
+        assertThat(new OperationArchive(this.folder.getRoot().toPath().resolve(owners.get(archived))).size(archived), equalTo(0L));
+        assertThat(moved.getOpeningBalance(archived), equalTo(new BigDecimal((Integer.parseInt(archived) + 1) + ".00")));
+        assertThat(moved.list(archived), hasSize(1));
+        assertThat(moved.list(archived, null, null), hasSize(2));
+        assertThat(this.partitionedAccountService.establishAccountStatement(archived).getBalance(), equalTo(new BigDecimal(archived + ".00")));
+    }
+
+    /**
+     * Tests {@link PartitionedAccountService#addPartition(String)} when the new partition fails: the restored accounts
+     * are removed from it and the partition is not added.
+     */
+    @Test
+    public void testAddPartitionRollback() {
+        // prepare
+        final Map<String, String> owners = this.deposit(100);
+        final AtomicLong restorations = new AtomicLong();
+        final AccountRepository failing = new AccountRepository() {
+
+            @Override
+            public void restore(final AccountExport export) {
+                if (restorations.incrementAndGet() > 2) {
+                    throw new IllegalStateException("The partition is unavailable");
+                }
+                super.restore(export);
+            }
+
+        };
+
+        // call
+        try {
+            this.addPartition("c", failing);
+            fail("The partition c should not be added");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+
+        // check
+        assertThat(restorations.get(), equalTo(3L));
+        this.assertNotMoved(owners);
+    }
+
+    /**
+     * Tests {@link PartitionedAccountService#transfer(String, String, BigDecimal)} between two partitions.
+     */
+    @Test(expected = CrossPartitionTransferException.class)
+    public void testTransferAcrossPartitions() {
+        // prepare
+        final String from = "0";
+        String to = "1";
+        for (int i = 1; this.partitionedAccountService.partitionOf(to).equals(this.partitionedAccountService.partitionOf(from)); i++) {
+            to = Integer.toString(i);
+        }
+
+        // call
+        this.partitionedAccountService.transfer(from, to, new BigDecimal("1.00"));
+    }
+
+    /**
+     * Sends a request to a partition through a serialized copy, and returns a serialized copy of the response, as a
+     * remote transport would.
+     *
+     * @param partitionId
+     *            the partition identifier
+     * @param request
+     *            the request
+     * @param <T>
+     *            the type of the response
+     * @return the response
+     */
+    private <T> T sendSerialized(final String partitionId, final PartitionRequest<T> request) {
+        return copy(this.transport.send(partitionId, copy(request)));
+    }
+
+    /**
+     * Copies a value through serialization.
+     *
+     * @param value
+     *            the value
+     * @param <T>
+     *            the type of the value
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(final T value) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                output.writeObject(value);
+            }
+            try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (T) input.readObject();
+            }
+        } catch (final IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("The value " + value + " cannot be serialized", e);
+        }
+    }
+
+    /**
+     * Deposits on and withdraws from accounts.
+     *
+     * @param count
+     *            the number of accounts
+     * @return the partitions owning the accounts, by account number
+     */
+    private Map<String, String> deposit(final int count) {
+        final Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String accountNumber = Integer.toString(i);
+            this.partitionedAccountService.depositMoney(accountNumber, new BigDecimal((i + 1) + ".00"));
+            this.partitionedAccountService.withdrawMoney(accountNumber, new BigDecimal("1.00"));
+            owners.put(accountNumber, this.partitionedAccountService.partitionOf(accountNumber));
+        }
+        return owners;
+    }
+
+    /**
+     * Checks that the accounts are still owned and stored by their partitions, the partition c holding none.
+     *
+     * @param owners
+     *            the partitions owning the accounts, by account number
+     */
+    private void assertNotMoved(final Map<String, String> owners) {
+        assertThat(this.accountServices.get("c").getAccountRepository().getAccountNumbers(), empty());
+        for (final Map.Entry<String, String> owner : owners.entrySet()) {
+            assertThat(this.partitionedAccountService.partitionOf(owner.getKey()), equalTo(owner.getValue()));
+            assertThat(this.accountServices.get(owner.getValue()).getAccountRepository().getAccountNumbers(), hasItem(owner.getKey()));
+            assertThat(this.partitionedAccountService.establishAccountStatement(owner.getKey()).getBalance(),
+                    equalTo(new BigDecimal(owner.getKey() + ".00")));
+        }
+    }
+
+    /**
+     * Registers and adds a partition, storing its accounts in an archived repository.
+     *
+     * @param partitionId
+     *            the partition identifier
+     * @return the number of moved accounts
+     */
+    private int addPartition(final String partitionId) {
+        return this.addPartition(partitionId, new AccountRepository(null, new OperationArchive(this.folder.getRoot().toPath().resolve(partitionId))));
+    }
+
+    /**
+     * Registers and adds a partition.
+     *
+     * @param partitionId
+     *            the partition identifier
+     * @param accountRepository
+     *            the repository of the partition
+     * @return the number of moved accounts
+     */
+    private int addPartition(final String partitionId, final AccountRepository accountRepository) {
+        final AtomicLong seconds = new AtomicLong();
+        final AccountService accountService = new AccountService(accountRepository,
+                () -> Instant.parse("2018-03-14T00:00:00.00Z").plusSeconds(seconds.incrementAndGet()));
+        this.accountServices.put(partitionId, accountService);
+        this.transport.register(partitionId, accountService);
+        return this.partitionedAccountService.addPartition(partitionId);
+    }
+
+}
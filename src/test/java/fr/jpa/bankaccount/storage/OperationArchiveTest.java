@@ -0,0 +1,185 @@
+package fr.jpa.bankaccount.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.jpa.bankaccount.account.OperationType;
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Tests {@link OperationArchive}.
+ *
+ * @author jpauchet
+ */
+public class OperationArchiveTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Archive of the cold operations. */
+    private OperationArchive operationArchive;
+
+    /**
+     * Prepares the unit tests execution.
+     */
+    @Before
+    public void setUp() throws Exception {
+        this.operationArchive = new OperationArchive(this.folder.getRoot().toPath().resolve("archive"));
+    }
+
+    /**
+     * Tests {@link OperationArchive#load(String, Instant, Instant)} after several
+     * {@link OperationArchive#append(String, List)}.
+     */
+    @Test
+    public void testAppendLoad() {
+        // prepare
+        this.operationArchive.append("12/345", Arrays.asList( //
+                new Operation("12/345", OperationType.DEPOSIT, Instant.parse("2018-01-12T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("12.50"), "request-1"), //
+                new Operation("12/345", OperationType.WITHDRAWAL, Instant.parse("2018-01-14T14:17:00.00Z"), new BigDecimal("6.00"), null) //
+        ));
+        this.operationArchive.append("12/345", Collections.singletonList( //
+                new Operation("12/345", OperationType.DEPOSIT, Instant.parse("2018-02-13T18:20:00.123456789Z"), BigDecimal.ZERO, new BigDecimal("50.75")) //
+        ));
+
+        // call
+        final List<Operation> operations = this.operationArchive.load("12/345", null, null);
+
+        // check
+        assertThat(operations, hasSize(3));
+        assertThat(operations.get(0),
+                allOf(Arrays.asList( //
+                        hasProperty("accountNumber", equalTo("12/345")), //
+                        hasProperty("operationType", equalTo(OperationType.DEPOSIT)), //
+                        hasProperty("operationDate", equalTo(Instant.parse("2018-01-12T09:30:00.00Z"))), //
+                        hasProperty("debit", equalTo(BigDecimal.ZERO)), //
+                        hasProperty("credit", equalTo(new BigDecimal("12.50"))), //
+                        hasProperty("idempotencyKey", equalTo("request-1")) //
+                )) //
+        );
+        assertThat(operations.get(1), hasProperty("credit", nullValue()));
+        assertThat(operations.get(2), hasProperty("operationDate", equalTo(Instant.parse("2018-02-13T18:20:00.123456789Z"))));
+    }
+
+    /**
+     * Tests {@link OperationArchive#load(String, Instant, Instant)} within a period.
+     */
+    @Test
+    public void testLoadPeriod() {
+        // prepare
+        this.operationArchive.append("12345", Arrays.asList( //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-12T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("12.50")), //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-13T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("50.75")), //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-14T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal("6.00")) //
+        ));
+
+        // call
+        final List<Operation> operations = this.operationArchive.load("12345", Instant.parse("2018-01-13T00:00:00.00Z"), Instant.parse("2018-01-14T00:00:00.00Z"));
+
+        // check
+        assertThat(operations, hasSize(1));
+        assertThat(operations.get(0), hasProperty("credit", equalTo(new BigDecimal("50.75"))));
+    }
+
+    /**
+     * Tests {@link OperationArchive#load(String, Instant, Instant)} of an account without archive.
+     */
+    @Test
+    public void testLoadNoArchive() {
+        // call
+        final List<Operation> operations = this.operationArchive.load("424242", null, null);
+
+        // check
+        assertThat(operations, empty());
+    }
+
+    /**
+     * Tests {@link OperationArchive#append(String, List)} failing in the middle of a block: the segment is cut back and
+     * stays readable.
+     */
+    @Test
+    public void testAppendFailure() {
+        // prepare
+        final long size = this.operationArchive.append("12345", Collections.singletonList( //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-12T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("12.50")) //
+        ));
+
+        // call
+        boolean failed = false;
+        try {
+            this.operationArchive.append("12345", Arrays.asList( //
+                    new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-13T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("1.00")), //
+                    null //
+            ));
+        } catch (final RuntimeException e) {
+            failed = true;
+        }
+
+        // check
+        assertThat(failed, equalTo(true));
+        assertThat(this.operationArchive.size("12345"), equalTo(size));
+        assertThat(this.operationArchive.load("12345", null, null), hasSize(1));
+    }
+
+    /**
+     * Tests {@link OperationArchive#truncate(String, long)}.
+     */
+    @Test
+    public void testTruncate() {
+        // prepare
+        final long size = this.operationArchive.append("12345", Collections.singletonList( //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-12T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("12.50")) //
+        ));
+        this.operationArchive.append("12345", Collections.singletonList( //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-13T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("1.00")) //
+        ));
+
+        // call
+        this.operationArchive.truncate("12345", size);
+        final List<Operation> kept = this.operationArchive.load("12345", null, null);
+        this.operationArchive.truncate("12345", 0L);
+
+        // check
+        assertThat(kept, hasSize(1));
+        assertThat(this.operationArchive.load("12345", null, null), empty());
+    }
+
+    /**
+     * Tests {@link OperationArchive#load(String, Instant, Instant, long)} up to a former size of the segment.
+     */
+    @Test
+    public void testLoadUpToSize() {
+        // prepare
+        final long size = this.operationArchive.append("12345", Collections.singletonList( //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-12T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("12.50")) //
+        ));
+        this.operationArchive.append("12345", Collections.singletonList( //
+                new Operation("12345", OperationType.DEPOSIT, Instant.parse("2018-01-13T09:30:00.00Z"), BigDecimal.ZERO, new BigDecimal("1.00")) //
+        ));
+
+        // call
+        final List<Operation> operations = this.operationArchive.load("12345", null, null, size);
+
+        // check
+        assertThat(operations, hasSize(1));
+        assertThat(operations.get(0), hasProperty("credit", equalTo(new BigDecimal("12.50"))));
+    }
+
+}
@@ -0,0 +1,344 @@
+package fr.jpa.bankaccount.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.jpa.bankaccount.account.OperationType;
+import fr.jpa.bankaccount.bean.Operation;
+
+/**
+ * Tests {@link WriteAheadLog}.
+ *
+ * @author jpauchet
+ */
+public class WriteAheadLogTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Log file. */
+    private Path file;
+
+    /**
+     * Receiver recording the replayed records.
+     */
+    private static final class RecordingReplayer implements WriteAheadLog.Replayer {
+
+        /** Replayed records, described as text. */
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void replayOperations(final List<Operation> operations) {
+            final StringBuilder record = new StringBuilder();
+            for (final Operation operation : operations) {
+                record.append(operation.getAccountNumber()).append(':').append(operation.getCredit()).append(' ');
+            }
+            this.records.add(record.toString().trim());
+        }
+
+        @Override
+        public void replayCompaction(final String accountNumber, final int count, final long segmentSize) {
+            this.records.add("compaction " + accountNumber + ':' + count + '@' + segmentSize);
+        }
+
+        @Override
+        public void replayRemoval(final String accountNumber) {
+            this.records.add("removal " + accountNumber);
+        }
+
+        @Override
+        public void replayCheckpoint(final String accountNumber, final List<Operation> operations, final int archivedCount,
+                final BigDecimal openingBalance, final Instant archivedUntil, final long segmentSize) {
+            this.records.add("checkpoint " + accountNumber + ':' + operations.size() + '+' + archivedCount + '=' + openingBalance + '@' + segmentSize + ' '
+                    + archivedUntil);
+        }
+
+    }
+
+    /**
+     * Prepares the unit tests execution.
+     */
+    @Before
+    public void setUp() throws Exception {
+        this.file = this.folder.getRoot().toPath().resolve("accounts.log");
+    }
+
+    /**
+     * Builds a deposit.
+     *
+     * @param accountNumber
+     *            the account number
+     * @param credit
+     *            the credit
+     * @return the operation
+     */
+    private static Operation deposit(final String accountNumber, final String credit) {
+        return new Operation(accountNumber, OperationType.DEPOSIT, Instant.parse("2018-03-14T00:00:00.00Z"), BigDecimal.ZERO, new BigDecimal(credit));
+    }
+
+    /**
+     * Replays the log file.
+     *
+     * @return the replayed records
+     */
+    private List<String> replay() {
+        final RecordingReplayer replayer = new RecordingReplayer();
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            log.replay(replayer);
+        }
+        return replayer.records;
+    }
+
+    /**
+     * Tests {@link WriteAheadLog#replay(WriteAheadLog.Replayer)} after appends.
+     */
+    @Test
+    public void testReplay() {
+        // prepare
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ofMillis(1), 16)) {
+            log.appendOperations(Collections.singletonList(deposit("12345", "12.50"))).join();
+            log.appendOperations(Arrays.asList(deposit("12345", "1.00"), deposit("67890", "2.00"))).join();
+            log.appendCompaction("12345", 1, 42L).join();
+            log.appendRemoval("67890").join();
+        }
+
+        // call
+        final List<String> records = this.replay();
+
+        // check
+        assertThat(records, contains("12345:12.50", "12345:1.00 67890:2.00", "compaction 12345:1@42", "removal 67890"));
+    }
+
+    /**
+     * Tests {@link WriteAheadLog#appendOperations(List)} from concurrent writers: records are grouped into fewer syncs.
+     */
+    @Test(timeout = 30000)
+    public void testGroupCommit() throws Exception {
+        // prepare
+        final int writers = 8;
+        final int recordsPerWriter = 50;
+        final List<Thread> threads = new ArrayList<>();
+        final long syncs;
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ofMillis(2), 64)) {
+            for (int w = 0; w < writers; w++) {
+                final String accountNumber = Integer.toString(w);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < recordsPerWriter; i++) {
+                        log.appendOperations(Collections.singletonList(deposit(accountNumber, "1.00"))).join();
+                    }
+                }));
+            }
+
+            // call
+            threads.forEach(Thread::start);
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            syncs = log.getSyncCount();
+        }
+
+        // check
+        assertThat(this.replay(), hasSize(writers * recordsPerWriter));
+        assertThat(syncs, lessThan((long) writers * recordsPerWriter));
+    }
+
+    /**
+     * Tests the recovery from a crash at every byte of the last records: the torn tail is truncated and the complete
+     * records are replayed.
+     */
+    @Test
+    public void testRecoveryTornTail() throws Exception {
+        // prepare
+        final List<Long> sizes = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            for (int i = 0; i < 3; i++) {
+                log.appendOperations(Collections.singletonList(deposit("12345", i + ".00"))).join();
+                sizes.add(Files.size(this.file));
+            }
+        }
+        final byte[] complete = Files.readAllBytes(this.file);
+
+        for (int cut = (int) (long) sizes.get(0); cut < complete.length; cut++) {
+            // call
+            Files.write(this.file, Arrays.copyOf(complete, cut));
+            final List<String> records = this.replay();
+
+            // check
+            final int expected = cut < sizes.get(1) ? 1 : 2;
+            assertThat(records, hasSize(expected));
+            assertThat(Files.size(this.file), equalTo(sizes.get(expected - 1)));
+        }
+    }
+
+    /**
+     * Tests the recovery from a corrupted record: it is truncated with the records following it.
+     */
+    @Test
+    public void testRecoveryCorruptedRecord() throws Exception {
+        // prepare
+        final long firstSize;
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            log.appendOperations(Collections.singletonList(deposit("12345", "1.00"))).join();
+            firstSize = Files.size(this.file);
+            log.appendOperations(Collections.singletonList(deposit("12345", "2.00"))).join();
+            log.appendOperations(Collections.singletonList(deposit("12345", "3.00"))).join();
+        }
+        try (RandomAccessFile corrupted = new RandomAccessFile(this.file.toFile(), "rw")) {
+            corrupted.seek(firstSize + 12);
+            corrupted.write(0x7f);
+        }
+
+        // call
+        final List<String> records = this.replay();
+
+        // check
+        assertThat(records, contains("12345:1.00"));
+        assertThat(Files.size(this.file), equalTo(firstSize));
+    }
+
+    /**
+     * Tests that appends made after a recovery follow the valid records.
+     */
+    @Test
+    public void testAppendAfterRecovery() throws IOException {
+        // prepare
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            log.appendOperations(Collections.singletonList(deposit("12345", "1.00"))).join();
+        }
+        Files.write(this.file, new byte[] { 0, 0, 0, 42, 1, 2 }, StandardOpenOption.APPEND);
+
+        // call
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            final CompletableFuture<Void> durable = log.appendOperations(Collections.singletonList(deposit("12345", "2.00")));
+            durable.join();
+        }
+
+        // check
+        assertThat(this.replay(), contains("12345:1.00", "12345:2.00"));
+    }
+
+    /**
+     * Tests {@link WriteAheadLog#checkpoint(java.util.function.Consumer)}: the log is replaced by the state of the
+     * accounts, followed by the next records.
+     */
+    @Test
+    public void testCheckpoint() throws IOException {
+        // prepare
+        final long logSize;
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            for (int i = 0; i < 20; i++) {
+                log.appendOperations(Collections.singletonList(deposit("12345", "1.00"))).join();
+            }
+            log.appendCompaction("12345", 19, 42L).join();
+            logSize = Files.size(this.file);
+
+            // call
+            log.checkpoint(checkpoint -> {
+                checkpoint.account("12345", Collections.singletonList(deposit("12345", "1.00")), 19, new BigDecimal("19.00"), Instant.parse("2018-03-14T00:00:00.00Z"),
+                        42L);
+                checkpoint.account("67890", Collections.emptyList(), 0, BigDecimal.ZERO, null, 0L);
+            }).join();
+            log.appendRemoval("67890").join();
+        }
+
+        // check
+        assertThat(Files.size(this.file), lessThan(logSize));
+        assertThat(Files.exists(this.file.resolveSibling("accounts.log.checkpoint")), equalTo(false));
+        assertThat(this.replay(), contains("checkpoint 12345:1+19=19.00@42 2018-03-14T00:00:00Z", "checkpoint 67890:0+0=0@0 null", "removal 67890"));
+    }
+
+    /**
+     * Tests the opening of a log of an unknown version.
+     */
+    @Test
+    public void testUnknownVersion() throws IOException {
+        // prepare
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            log.appendOperations(Collections.singletonList(deposit("12345", "1.00"))).join();
+        }
+        try (RandomAccessFile future = new RandomAccessFile(this.file.toFile(), "rw")) {
+            future.seek(4);
+            future.write(2);
+        }
+
+        try {
+            // call
+            new WriteAheadLog(this.file, Duration.ZERO, 16);
+            fail("The log should be rejected");
+        } catch (final IllegalStateException e) {
+            // check
+            assertThat(e.getMessage(), containsString("version 2"));
+        }
+    }
+
+    /**
+     * Tests the opening of a log written without header, before the record format was versioned.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testUnversionedLog() throws IOException {
+        // prepare
+        Files.write(this.file, new byte[] { 0, 0, 0, 5, 1, 2, 3, 4, 1, 0, 0, 0, 0 });
+
+        // call
+        new WriteAheadLog(this.file, Duration.ZERO, 16);
+    }
+
+    /**
+     * Tests the opening of a log whose header was torn by a crash during its creation.
+     */
+    @Test
+    public void testTornHeader() throws IOException {
+        // prepare
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            log.appendOperations(Collections.singletonList(deposit("12345", "1.00"))).join();
+        }
+        Files.write(this.file, Arrays.copyOf(Files.readAllBytes(this.file), 3));
+
+        // call
+        try (WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16)) {
+            log.appendOperations(Collections.singletonList(deposit("12345", "2.00"))).join();
+        }
+
+        // check
+        assertThat(this.replay(), contains("12345:2.00"));
+    }
+
+    /**
+     * Tests {@link WriteAheadLog#appendOperations(List)} once closed.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testAppendClosed() {
+        // prepare
+        final WriteAheadLog log = new WriteAheadLog(this.file, Duration.ZERO, 16);
+        log.close();
+
+        // call
+        log.appendOperations(Collections.singletonList(deposit("12345", "1.00")));
+    }
+
+}